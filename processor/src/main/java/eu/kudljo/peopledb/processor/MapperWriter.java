@@ -0,0 +1,279 @@
+package eu.kudljo.peopledb.processor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the mapper of the entity of a repository, {@code <Entity>Mapper} in the package of the repositories:
+ * a row mapper resolving the column of each constructor parameter once per query, by the parameter name in
+ * upper snake case, and {@code mapForSave} binding the columns of the {@code INSERT} of the SAVE SQL from
+ * the accessors of the same names. Both are straight-line code without reflection.
+ * <p>
+ * Only entities with one public constructor whose parameters and saved columns all have supported types get a mapper,
+ * entities with associations like people keep their hand-written mapping.
+ */
+final class MapperWriter {
+    private static final Pattern INSERT_COLUMNS = Pattern.compile("^\\s*INSERT\\s+INTO\\s+\\w+\\s*\\(([^)]*)\\)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final ProcessingEnvironment processingEnv;
+
+    MapperWriter(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+    }
+
+    void write(TypeElement repository, Map<String, String> sqlByOperation) throws IOException {
+        TypeElement entity = RepositoryProcessor.getEntityType(repository);
+        if (entity == null || !RepositoryProcessor.isAccessible(entity)) {
+            return;
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(entity.getEnclosedElements()).stream()
+                .filter(constructor -> constructor.getModifiers().contains(Modifier.PUBLIC))
+                .toList();
+        if (constructors.size() != 1) {
+            skip(entity, "it has %d public constructors".formatted(constructors.size()));
+            return;
+        }
+        List<Column> readColumns = new ArrayList<>();
+        for (VariableElement parameter : constructors.get(0).getParameters()) {
+            ColumnType type = getColumnType(parameter.asType());
+            if (type == null) {
+                skip(entity, "constructor parameter %s has unsupported type %s".formatted(parameter.getSimpleName(), parameter.asType()));
+                return;
+            }
+            String name = parameter.getSimpleName().toString();
+            readColumns.add(new Column(toColumnName(name), name, parameter.asType(), type));
+        }
+        Matcher insertColumns = INSERT_COLUMNS.matcher(sqlByOperation.getOrDefault("SAVE", ""));
+        if (!insertColumns.find()) {
+            skip(entity, "its SAVE SQL is not an INSERT with a column list");
+            return;
+        }
+        List<Column> savedColumns = new ArrayList<>();
+        for (String columnName : insertColumns.group(1).split(",")) {
+            columnName = columnName.strip().toUpperCase();
+            String propertyName = toPropertyName(columnName);
+            ExecutableElement accessor = RepositoryProcessor.findAccessor(entity, propertyName,
+                    "get" + Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1));
+            ColumnType type = accessor == null ? null : getColumnType(accessor.getReturnType());
+            if (type == null) {
+                skip(entity, "saved column %s has no accessor of a supported type".formatted(columnName));
+                return;
+            }
+            savedColumns.add(new Column(columnName, accessor.getSimpleName() + "()", accessor.getReturnType(), type));
+        }
+        writeMapper(repository, entity, readColumns, savedColumns);
+    }
+
+    private void writeMapper(TypeElement repository, TypeElement entity, List<Column> readColumns, List<Column> savedColumns) throws IOException {
+        String mapperName = entity.getSimpleName() + "Mapper";
+        String entityName = entity.getQualifiedName().toString();
+        boolean usesTimestamps = readColumns.stream().anyMatch(column -> column.type() == ColumnType.ZONED_DATE_TIME)
+                || savedColumns.stream().anyMatch(column -> column.type() == ColumnType.ZONED_DATE_TIME);
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(RepositoryProcessor.REPOSITORY_PACKAGE + "." + mapperName, repository, entity)
+                .openWriter())) {
+            out.println("package " + RepositoryProcessor.REPOSITORY_PACKAGE + ";");
+            out.println();
+            out.println("import javax.annotation.processing.Generated;");
+            out.println("import java.sql.PreparedStatement;");
+            out.println("import java.sql.ResultSet;");
+            out.println("import java.sql.ResultSetMetaData;");
+            out.println("import java.sql.SQLException;");
+            out.println("import java.util.HashMap;");
+            out.println("import java.util.Map;");
+            out.println();
+            out.println("/**");
+            out.println(" * Maps rows of the queries of {@link " + repository.getSimpleName() + "} to {@link " + entityName + "},");
+            out.println(" * and binds its columns to the SAVE statement.");
+            out.println(" */");
+            out.println("@Generated(\"" + RepositoryProcessor.class.getName() + "\")");
+            out.println("final class " + mapperName + " implements RowMapper<" + entityName + "> {");
+            boolean hasEnums = false;
+            for (Column column : readColumns) {
+                if (column.type() == ColumnType.ENUM) {
+                    String enumName = erasure(column.javaType());
+                    out.println("    private static final EnumLookup<" + enumName + "> " + column.name() + "_VALUES = EnumLookup.of("
+                            + enumName + ".class);");
+                    hasEnums = true;
+                }
+            }
+            if (hasEnums) {
+                out.println();
+            }
+            for (Column column : readColumns) {
+                out.println("    private final int " + column.javaName() + "Column;");
+            }
+            out.println();
+            out.println("    /**");
+            out.println("     * @throws IllegalArgumentException if the query has no column for a constructor parameter");
+            out.println("     */");
+            out.println("    " + mapperName + "(ResultSetMetaData metaData) throws SQLException {");
+            out.println("        Map<String, Integer> columnIndexes = new HashMap<>();");
+            out.println("        for (int columnIndex = 1; columnIndex <= metaData.getColumnCount(); columnIndex++) {");
+            out.println("            columnIndexes.putIfAbsent(metaData.getColumnLabel(columnIndex).toUpperCase(), columnIndex);");
+            out.println("        }");
+            for (Column column : readColumns) {
+                out.println("        " + column.javaName() + "Column = getColumnIndex(columnIndexes, \"" + column.name() + "\");");
+            }
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public " + entityName + " mapRow(ResultSet resultSet) throws SQLException {");
+            List<String> arguments = new ArrayList<>();
+            for (Column column : readColumns) {
+                String index = column.javaName() + "Column";
+                if (column.type() == ColumnType.ENUM) {
+                    // cached lookup, like the regions of PersonRowMapper
+                    arguments.add(column.name() + "_VALUES.valueOf(resultSet.getString(" + index + "))");
+                } else {
+                    arguments.add(column.type().read.formatted(index, erasure(column.javaType())));
+                }
+            }
+            out.println("        return new " + entityName + "(");
+            out.println("                " + String.join(",\n                ", arguments) + ");");
+            out.println("    }");
+            out.println();
+            out.println("    static void mapForSave(" + entityName + " entity, PreparedStatement preparedStatement) throws SQLException {");
+            for (int index = 0; index < savedColumns.size(); index++) {
+                Column column = savedColumns.get(index);
+                out.println("        " + column.type().write.formatted(index + 1, "entity." + column.javaName()) + ";");
+            }
+            out.println("    }");
+            out.println();
+            out.println("    private static int getColumnIndex(Map<String, Integer> columnIndexes, String columnName) {");
+            out.println("        Integer columnIndex = columnIndexes.get(columnName);");
+            out.println("        if (columnIndex == null) {");
+            out.println("            throw new IllegalArgumentException(\"Query of " + entity.getSimpleName() + " has no column \" + columnName);");
+            out.println("        }");
+            out.println("        return columnIndex;");
+            out.println("    }");
+            if (usesTimestamps) {
+                out.println();
+                out.println("    private static java.time.ZonedDateTime toZonedDateTime(java.sql.Timestamp timestamp) {");
+                out.println("        return timestamp == null ? null : java.time.ZonedDateTime.of(timestamp.toLocalDateTime(), java.time.ZoneId.of(\"+0\"));");
+                out.println("    }");
+                out.println();
+                out.println("    private static java.sql.Timestamp toTimestamp(java.time.ZonedDateTime dateTime) {");
+                out.println("        return dateTime == null ? null");
+                out.println("                : java.sql.Timestamp.valueOf(dateTime.withZoneSameInstant(java.time.ZoneId.of(\"+0\")).toLocalDateTime());");
+                out.println("    }");
+            }
+            out.println("}");
+        }
+    }
+
+    private ColumnType getColumnType(TypeMirror type) {
+        switch (type.getKind()) {
+            case LONG:
+                return ColumnType.LONG;
+            case INT:
+                return ColumnType.INT;
+            case DOUBLE:
+                return ColumnType.DOUBLE;
+            case BOOLEAN:
+                return ColumnType.BOOLEAN;
+            case DECLARED:
+                break;
+            default:
+                return null;
+        }
+        Element element = ((DeclaredType) type).asElement();
+        if (element.getKind() == ElementKind.ENUM) {
+            return ColumnType.ENUM;
+        }
+        return switch (((TypeElement) element).getQualifiedName().toString()) {
+            case "java.lang.String" -> ColumnType.STRING;
+            case "java.math.BigDecimal" -> ColumnType.BIG_DECIMAL;
+            case "java.time.ZonedDateTime" -> ColumnType.ZONED_DATE_TIME;
+            case "java.lang.Long", "java.lang.Integer", "java.lang.Double", "java.lang.Boolean" -> ColumnType.BOXED;
+            default -> null;
+        };
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private void skip(TypeElement entity, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "No mapper generated, " + reason, entity);
+    }
+
+    /**
+     * @return {@code lastName} as {@code LAST_NAME}, like record projections
+     */
+    static String toColumnName(String propertyName) {
+        StringBuilder columnName = new StringBuilder(propertyName.length() + 4);
+        for (int index = 0; index < propertyName.length(); index++) {
+            char character = propertyName.charAt(index);
+            if (Character.isUpperCase(character) && index > 0) {
+                columnName.append('_');
+            }
+            columnName.append(Character.toUpperCase(character));
+        }
+        return columnName.toString();
+    }
+
+    /**
+     * @return {@code LAST_NAME} as {@code lastName}
+     */
+    static String toPropertyName(String columnName) {
+        StringBuilder propertyName = new StringBuilder(columnName.length());
+        boolean upperCase = false;
+        for (char character : columnName.toCharArray()) {
+            if (character == '_') {
+                upperCase = propertyName.length() > 0;
+            } else {
+                propertyName.append(upperCase ? character : Character.toLowerCase(character));
+                upperCase = false;
+            }
+        }
+        return propertyName.toString();
+    }
+
+    /**
+     * @param javaName Constructor parameter of read columns, accessor call of saved columns
+     */
+    private record Column(String name, String javaName, TypeMirror javaType, ColumnType type) {
+    }
+
+    /**
+     * Code reading a column by index {@code %1$s} as type {@code %2$s},
+     * and code binding value {@code %2$s} to parameter {@code %1$s}.
+     */
+    private enum ColumnType {
+        LONG("resultSet.getLong(%1$s)", "preparedStatement.setLong(%1$s, %2$s)"),
+        INT("resultSet.getInt(%1$s)", "preparedStatement.setInt(%1$s, %2$s)"),
+        DOUBLE("resultSet.getDouble(%1$s)", "preparedStatement.setDouble(%1$s, %2$s)"),
+        BOOLEAN("resultSet.getBoolean(%1$s)", "preparedStatement.setBoolean(%1$s, %2$s)"),
+        BOXED("resultSet.getObject(%1$s, %2$s.class)", "preparedStatement.setObject(%1$s, %2$s)"),
+        STRING("resultSet.getString(%1$s)", "preparedStatement.setString(%1$s, %2$s)"),
+        BIG_DECIMAL("resultSet.getBigDecimal(%1$s)", "preparedStatement.setBigDecimal(%1$s, %2$s)"),
+        ZONED_DATE_TIME("toZonedDateTime(resultSet.getTimestamp(%1$s))", "preparedStatement.setTimestamp(%1$s, toTimestamp(%2$s))"),
+        ENUM(null, "preparedStatement.setString(%1$s, java.util.Objects.toString(%2$s, null))");
+
+        private final String read;
+        private final String write;
+
+        ColumnType(String read, String write) {
+            this.read = read;
+            this.write = write;
+        }
+    }
+}
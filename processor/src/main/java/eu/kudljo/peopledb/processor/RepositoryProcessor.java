@@ -0,0 +1,282 @@
+package eu.kudljo.peopledb.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the metadata the repositories otherwise read by reflection when they are first used:
+ * <ul>
+ *     <li>{@code GeneratedMetadata} with the SQL of the {@code @SQL} and {@code @MultiSQL} annotations of each repository
+ *     and an ID accessor calling the getter and setter of the {@code @Id} field of each entity,</li>
+ *     <li>a row mapper and save mapper for each entity that can be created by its only public constructor,
+ *     see {@link MapperWriter}.</li>
+ * </ul>
+ * Classes it cannot generate code for, e.g. compiled without the processor, keep the reflective lookups.
+ */
+@SupportedAnnotationTypes({
+        RepositoryProcessor.SQL_ANNOTATION,
+        RepositoryProcessor.MULTI_SQL_ANNOTATION,
+        RepositoryProcessor.ID_ANNOTATION
+})
+public class RepositoryProcessor extends AbstractProcessor {
+    static final String SQL_ANNOTATION = "eu.kudljo.peopledb.annotation.SQL";
+    static final String MULTI_SQL_ANNOTATION = "eu.kudljo.peopledb.annotation.MultiSQL";
+    static final String ID_ANNOTATION = "eu.kudljo.peopledb.annotation.Id";
+    static final String REPOSITORY_PACKAGE = "eu.kudljo.peopledb.repository";
+    static final String CRUD_REPOSITORY = REPOSITORY_PACKAGE + ".CRUDRepository";
+    static final String CRUD_OPERATION = "eu.kudljo.peopledb.model.CrudOperation";
+
+    private boolean generated;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        // all annotated sources are in the first round, later rounds only see generated sources
+        if (generated || roundEnv.processingOver()) {
+            return false;
+        }
+        generated = true;
+        Map<TypeElement, Map<String, String>> sqlByRepository = collectSql(roundEnv);
+        List<IdAccessorModel> idAccessors = collectIdAccessors(roundEnv);
+        try {
+            writeMetadata(sqlByRepository, idAccessors);
+            MapperWriter mapperWriter = new MapperWriter(processingEnv);
+            for (Map.Entry<TypeElement, Map<String, String>> repository : sqlByRepository.entrySet()) {
+                mapperWriter.write(repository.getKey(), repository.getValue());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write generated sources: " + e);
+        }
+        return false;
+    }
+
+    /**
+     * @return SQL by name of its operation for each repository, the first declaration of an operation wins
+     * and repeated annotations come first, like at runtime
+     */
+    private Map<TypeElement, Map<String, String>> collectSql(RoundEnvironment roundEnv) {
+        Set<TypeElement> repositories = new LinkedHashSet<>();
+        for (String annotation : List.of(MULTI_SQL_ANNOTATION, SQL_ANNOTATION)) {
+            TypeElement annotationType = processingEnv.getElementUtils().getTypeElement(annotation);
+            if (annotationType == null) {
+                continue;
+            }
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotationType)) {
+                if (element.getKind() == ElementKind.METHOD && isAccessible((TypeElement) element.getEnclosingElement())) {
+                    repositories.add((TypeElement) element.getEnclosingElement());
+                }
+            }
+        }
+        Map<TypeElement, Map<String, String>> sqlByRepository = new LinkedHashMap<>();
+        for (TypeElement repository : repositories) {
+            Map<String, String> sqlByOperation = new LinkedHashMap<>();
+            List<ExecutableElement> methods = ElementFilter.methodsIn(repository.getEnclosedElements());
+            for (ExecutableElement method : methods) {
+                AnnotationMirror multiSql = getAnnotation(method, MULTI_SQL_ANNOTATION);
+                if (multiSql != null) {
+                    for (Object sql : (List<?>) getValue(multiSql, "value")) {
+                        putSql(sqlByOperation, (AnnotationMirror) ((AnnotationValue) sql).getValue());
+                    }
+                }
+            }
+            for (ExecutableElement method : methods) {
+                AnnotationMirror sql = getAnnotation(method, SQL_ANNOTATION);
+                if (sql != null) {
+                    putSql(sqlByOperation, sql);
+                }
+            }
+            sqlByRepository.put(repository, sqlByOperation);
+        }
+        return sqlByRepository;
+    }
+
+    private static void putSql(Map<String, String> sqlByOperation, AnnotationMirror sql) {
+        VariableElement operation = (VariableElement) getValue(sql, "operationType");
+        sqlByOperation.putIfAbsent(operation.getSimpleName().toString(), (String) getValue(sql, "value"));
+    }
+
+    /**
+     * @return Accessors of the entities whose {@code @Id} field has a public getter, and optionally a public setter
+     */
+    private List<IdAccessorModel> collectIdAccessors(RoundEnvironment roundEnv) {
+        List<IdAccessorModel> idAccessors = new ArrayList<>();
+        TypeElement idType = processingEnv.getElementUtils().getTypeElement(ID_ANNOTATION);
+        if (idType == null) {
+            return idAccessors;
+        }
+        for (VariableElement idField : ElementFilter.fieldsIn(roundEnv.getElementsAnnotatedWith(idType))) {
+            TypeElement entity = (TypeElement) idField.getEnclosingElement();
+            if (!isAccessible(entity)) {
+                continue;
+            }
+            String fieldName = idField.getSimpleName().toString();
+            String capitalizedName = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            ExecutableElement getter = findAccessor(entity, fieldName, "get" + capitalizedName);
+            ExecutableElement setter = ElementFilter.methodsIn(entity.getEnclosedElements()).stream()
+                    .filter(method -> method.getModifiers().contains(Modifier.PUBLIC)
+                            && method.getSimpleName().contentEquals("set" + capitalizedName)
+                            && method.getParameters().size() == 1
+                            && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), idField.asType()))
+                    .findFirst()
+                    .orElse(null);
+            if (getter == null || !processingEnv.getTypeUtils().isSameType(getter.getReturnType(), idField.asType())) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "No ID accessor generated, the ID has no public getter", idField);
+                continue;
+            }
+            idAccessors.add(new IdAccessorModel(entity, getter.getSimpleName().toString(),
+                    setter == null ? null : setter.getSimpleName().toString()));
+        }
+        return idAccessors;
+    }
+
+    /**
+     * @return Public method of the type without parameters, named like a record component or a bean getter
+     */
+    static ExecutableElement findAccessor(TypeElement type, String... names) {
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.PUBLIC) && method.getParameters().isEmpty()
+                    && List.of(names).contains(method.getSimpleName().toString())) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private void writeMetadata(Map<TypeElement, Map<String, String>> sqlByRepository, List<IdAccessorModel> idAccessors) throws IOException {
+        List<Element> originatingElements = new ArrayList<>(sqlByRepository.keySet());
+        idAccessors.forEach(idAccessor -> originatingElements.add(idAccessor.entity()));
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(REPOSITORY_PACKAGE + ".GeneratedMetadata", originatingElements.toArray(Element[]::new))
+                .openWriter())) {
+            out.println("package " + REPOSITORY_PACKAGE + ";");
+            out.println();
+            out.println("import " + CRUD_OPERATION + ";");
+            out.println();
+            out.println("import javax.annotation.processing.Generated;");
+            out.println("import java.util.Collections;");
+            out.println("import java.util.EnumMap;");
+            out.println("import java.util.Map;");
+            out.println();
+            out.println("/**");
+            out.println(" * SQL of the repositories and ID accessors of the entities, resolved at compile time.");
+            out.println(" */");
+            out.println("@Generated(\"" + RepositoryProcessor.class.getName() + "\")");
+            out.println("final class GeneratedMetadata {");
+            out.println("    private GeneratedMetadata() {");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * @return SQL declared by the annotations of the repository class, or null if it was not processed");
+            out.println("     */");
+            out.println("    static Map<CrudOperation, String> getSqlByOperation(Class<?> repositoryClass) {");
+            for (Map.Entry<TypeElement, Map<String, String>> repository : sqlByRepository.entrySet()) {
+                out.println("        if (repositoryClass == " + repository.getKey().getQualifiedName() + ".class) {");
+                out.println("            Map<CrudOperation, String> sqlByOperation = new EnumMap<>(CrudOperation.class);");
+                for (Map.Entry<String, String> sql : repository.getValue().entrySet()) {
+                    out.println("            sqlByOperation.put(CrudOperation." + sql.getKey() + ", "
+                            + processingEnv.getElementUtils().getConstantExpression(sql.getValue()) + ");");
+                }
+                out.println("            return Collections.unmodifiableMap(sqlByOperation);");
+                out.println("        }");
+            }
+            out.println("        return null;");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * @return ID accessor of the entity class, without setter if the ID has none, or null if it was not processed");
+            out.println("     */");
+            out.println("    static IdAccessor getIdAccessor(Class<?> entityClass) {");
+            for (IdAccessorModel idAccessor : idAccessors) {
+                String entity = idAccessor.entity().getQualifiedName().toString();
+                out.println("        if (entityClass == " + entity + ".class) {");
+                out.println("            return new IdAccessor(entity -> ((" + entity + ") entity)." + idAccessor.getter() + "(),");
+                out.println(idAccessor.setter() == null
+                        ? "                    null);"
+                        : "                    (entity, id) -> ((" + entity + ") entity)." + idAccessor.setter() + "(id));");
+                out.println("        }");
+            }
+            out.println("        return null;");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    /**
+     * @return Whether generated code in another package can refer to the type
+     */
+    static boolean isAccessible(TypeElement type) {
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            boolean nested = element.getEnclosingElement() instanceof TypeElement;
+            if (!element.getModifiers().contains(Modifier.PUBLIC) || nested && !element.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    static Object getValue(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals(name)) {
+                return value.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Entity type of a repository extending {@code CRUDRepository<T>}, or null
+     */
+    static TypeElement getEntityType(TypeElement repository) {
+        TypeMirror superclass = repository.getSuperclass();
+        while (superclass instanceof DeclaredType declaredType) {
+            TypeElement superElement = (TypeElement) declaredType.asElement();
+            if (superElement.getQualifiedName().contentEquals(CRUD_REPOSITORY)) {
+                return declaredType.getTypeArguments().size() == 1
+                        && declaredType.getTypeArguments().get(0) instanceof DeclaredType entityType
+                        ? (TypeElement) entityType.asElement()
+                        : null;
+            }
+            superclass = superElement.getSuperclass();
+        }
+        return null;
+    }
+
+    private record IdAccessorModel(TypeElement entity, String getter, String setter) {
+    }
+}
@@ -0,0 +1,103 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.Address;
+import eu.kudljo.peopledb.model.Person;
+import eu.kudljo.peopledb.model.Region;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * In-memory H2 databases of the benchmarks, created from the test schema and seeded through the repository.
+ */
+final class BenchmarkDatabase {
+    private static final AtomicLong DATABASE_NUMBER = new AtomicLong();
+    private static final int SEED_BATCH_SIZE = 10_000;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * @return Connection to a new empty database, which lives until {@link #shutdown(Connection)}
+     */
+    static Connection create() throws SQLException {
+        String url = "jdbc:h2:mem:benchmark%d;DB_CLOSE_DELAY=-1;LAZY_QUERY_EXECUTION=1;INIT=RUNSCRIPT FROM 'classpath:schema.sql'"
+                .formatted(DATABASE_NUMBER.incrementAndGet());
+        return DriverManager.getConnection(url);
+    }
+
+    static void shutdown(Connection connection) throws SQLException {
+        try (connection; Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    /**
+     * @return Greatest ID of the table, 0 if it is empty
+     */
+    static long getMaxId(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(ID), 0) FROM " + table)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    /**
+     * Deletes the rows inserted after the row of {@code maxId}, e.g. by the write benchmarks of an iteration.
+     */
+    static void deleteRowsAfter(Connection connection, String table, long maxId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE ID > ?")) {
+            statement.setLong(1, maxId);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @return IDs of the saved people, in insertion order
+     */
+    static long[] seed(PeopleRepository peopleRepository, int rowCount) {
+        long[] ids = new long[rowCount];
+        for (int fromIndex = 0; fromIndex < rowCount; fromIndex += SEED_BATCH_SIZE) {
+            List<Person> people = createPeople(fromIndex, Math.min(fromIndex + SEED_BATCH_SIZE, rowCount)).toList();
+            peopleRepository.saveAll(people, SEED_BATCH_SIZE);
+            for (int index = 0; index < people.size(); index++) {
+                ids[fromIndex + index] = people.get(index).getId();
+            }
+        }
+        return ids;
+    }
+
+    static Stream<Person> createPeople(int fromIndex, int toIndex) {
+        return IntStream.range(fromIndex, toIndex).mapToObj(BenchmarkDatabase::createPerson);
+    }
+
+    static Person createPerson(int index) {
+        Person person = new Person("First" + index, "Last" + (index % 1000), ZonedDateTime.of(
+                1950 + index % 60, 1 + index % 12, 1 + index % 28, 12, 0, 0, 0, ZoneId.of("+0")));
+        person.setSalary(new BigDecimal(30_000 + index % 100_000 + ".50"));
+        person.setEmail("person" + index + "@benchmark.test");
+        return person;
+    }
+
+    static Person createPersonWithGraph(int index) {
+        Person person = createPerson(index);
+        person.setHomeAddress(new Address(null, index + " Beale St.", "Apt. 1A", "Wala Wala",
+                "WA", "90210", "United States", "Fulton County", Region.WEST));
+        person.setSpouse(createPerson(index + 1));
+        person.addChild(createPerson(index + 2));
+        person.addChild(createPerson(index + 3));
+        return person;
+    }
+}
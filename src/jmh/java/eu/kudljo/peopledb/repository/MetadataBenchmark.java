@@ -0,0 +1,72 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.annotation.Id;
+import eu.kudljo.peopledb.annotation.MultiSQL;
+import eu.kudljo.peopledb.annotation.SQL;
+import eu.kudljo.peopledb.model.CrudOperation;
+import eu.kudljo.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Field;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cached {@link RepositoryMetadata} and {@link IdAccessor} against the annotation scans they replaced,
+ * which ran for every statement and every saved entity.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MetadataBenchmark {
+    private final Person person = new Person(1L, "John", "Smith", ZonedDateTime.now());
+    private long nextId;
+
+    @Benchmark
+    public String cachedSql() {
+        return RepositoryMetadata.of(PeopleRepository.class).getSql(CrudOperation.COUNT, () -> null);
+    }
+
+    @Benchmark
+    public String scannedSql() {
+        Stream<SQL> multiSqlStream = Arrays.stream(PeopleRepository.class.getDeclaredMethods())
+                .filter(method -> method.isAnnotationPresent(MultiSQL.class))
+                .map(method -> method.getAnnotation(MultiSQL.class))
+                .flatMap(multiSQL -> Arrays.stream(multiSQL.value()));
+        Stream<SQL> sqlStream = Arrays.stream(PeopleRepository.class.getDeclaredMethods())
+                .filter(method -> method.isAnnotationPresent(SQL.class))
+                .map(method -> method.getAnnotation(SQL.class));
+        return Stream.concat(multiSqlStream, sqlStream)
+                .filter(annotation -> annotation.operationType().equals(CrudOperation.COUNT))
+                .map(SQL::value)
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Benchmark
+    public Long cachedIdAccess() {
+        IdAccessor idAccessor = IdAccessor.of(Person.class);
+        idAccessor.setId(person, ++nextId);
+        return idAccessor.getId(person);
+    }
+
+    @Benchmark
+    public Long scannedIdAccess() throws IllegalAccessException {
+        Long id = null;
+        for (Field field : person.getClass().getDeclaredFields()) {
+            if (field.isAnnotationPresent(Id.class)) {
+                field.setAccessible(true);
+                field.set(person, ++nextId);
+                id = (Long) field.get(person);
+            }
+        }
+        return id;
+    }
+}
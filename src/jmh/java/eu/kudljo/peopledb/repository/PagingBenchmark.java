@@ -0,0 +1,90 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyset pagination ({@link CRUDRepository#findPage(Long, int)}) against OFFSET pagination of the same page.
+ * Keyset pages should cost the same at any depth, OFFSET pages grow with the number of skipped rows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PagingBenchmark {
+    private static final String FIND_PAGE_BY_OFFSET_SQL = """
+            SELECT PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME,
+            PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL
+            FROM PEOPLE AS PARENT
+            ORDER BY PARENT.ID
+            OFFSET ? ROWS FETCH NEXT ? ROWS ONLY
+            """;
+
+    @Param({"1000000"})
+    private int rowCount;
+
+    @Param({"0", "0.5", "0.99"})
+    private double pageDepth;
+
+    @Param({"100"})
+    private int pageSize;
+
+    private Connection connection;
+    private PeopleRepository peopleRepository;
+    private PreparedStatement offsetStatement;
+    private RowMapper<Person> offsetRowMapper;
+    private int offset;
+    private long afterId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = BenchmarkDatabase.create();
+        peopleRepository = new PeopleRepository(connection);
+        long[] ids = BenchmarkDatabase.seed(peopleRepository, rowCount);
+        offset = (int) (pageDepth * (rowCount - pageSize));
+        afterId = offset == 0 ? ids[0] - 1 : ids[offset - 1];
+        offsetStatement = connection.prepareStatement(FIND_PAGE_BY_OFFSET_SQL);
+        offsetRowMapper = new PersonRowMapper(offsetStatement.getMetaData());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        offsetStatement.close();
+        peopleRepository.close();
+        BenchmarkDatabase.shutdown(connection);
+    }
+
+    @Benchmark
+    public List<Person> keyset() {
+        return peopleRepository.findPage(afterId, pageSize);
+    }
+
+    @Benchmark
+    public List<Person> offset() throws SQLException {
+        offsetStatement.setInt(1, offset);
+        offsetStatement.setInt(2, pageSize);
+        List<Person> people = new ArrayList<>(pageSize);
+        try (ResultSet resultSet = offsetStatement.executeQuery()) {
+            while (resultSet.next()) {
+                people.add(offsetRowMapper.mapRow(resultSet));
+            }
+        }
+        return people;
+    }
+}
@@ -0,0 +1,181 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.FetchPlan;
+import eu.kudljo.peopledb.model.GraphLoadMode;
+import eu.kudljo.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput and latency percentiles (sample mode) of the repository operations against an in-memory H2
+ * seeded with {@code rowCount} people. Run with the gc profiler to see the allocation rate per operation.
+ * <p>
+ * Only the findById benchmarks run for each graph load mode and fetch plan, see {@link GraphState}.
+ * Rows inserted by the write benchmarks are deleted after each iteration, so every iteration sees the seeded table.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PeopleRepositoryBenchmark {
+    private static final int SAVE_ALL_BATCH_SIZE = 100;
+    private static final int WARM_ID_COUNT = 1000;
+
+    @Param({"10000", "100000"})
+    private int rowCount;
+
+    private Connection connection;
+    private PeopleRepository peopleRepository;
+    private long[] ids;
+    private long seededMaxPersonId;
+    private long seededMaxAddressId;
+    private int nextPersonIndex;
+
+    /**
+     * Repositories loading the person graph by the given graph load mode and fetch plan, for the findById benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class GraphState {
+        @Param({"SELECT_IN", "JOIN"})
+        private GraphLoadMode graphLoadMode;
+
+        @Param({"LAZY", "EAGER"})
+        private FetchPlan fetchPlan;
+
+        private PeopleRepository peopleRepository;
+        private PeopleRepository cachingPeopleRepository;
+
+        @Setup(Level.Trial)
+        public void setUp(PeopleRepositoryBenchmark benchmark) {
+            peopleRepository = createRepository(benchmark.connection);
+            cachingPeopleRepository = createRepository(benchmark.connection);
+            cachingPeopleRepository.enableEntityCache(WARM_ID_COUNT, Duration.ofHours(1));
+            for (int index = 0; index < WARM_ID_COUNT; index++) {
+                cachingPeopleRepository.findById(benchmark.ids[index]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            cachingPeopleRepository.close();
+            peopleRepository.close();
+        }
+
+        private PeopleRepository createRepository(Connection connection) {
+            PeopleRepository repository = new PeopleRepository(connection);
+            repository.setGraphLoadMode(graphLoadMode);
+            repository.setDefaultFetchPlan(fetchPlan);
+            return repository;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = BenchmarkDatabase.create();
+        peopleRepository = new PeopleRepository(connection);
+        ids = BenchmarkDatabase.seed(peopleRepository, rowCount);
+        seededMaxPersonId = BenchmarkDatabase.getMaxId(connection, "PEOPLE");
+        seededMaxAddressId = BenchmarkDatabase.getMaxId(connection, "ADDRESSES");
+        nextPersonIndex = rowCount;
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteInsertedRows() throws SQLException {
+        BenchmarkDatabase.deleteRowsAfter(connection, "PEOPLE", seededMaxPersonId);
+        BenchmarkDatabase.deleteRowsAfter(connection, "ADDRESSES", seededMaxAddressId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        peopleRepository.close();
+        BenchmarkDatabase.shutdown(connection);
+    }
+
+    @Benchmark
+    public Person save() {
+        return peopleRepository.save(BenchmarkDatabase.createPerson(nextPersonIndex++));
+    }
+
+    @Benchmark
+    public Person saveWithGraph() {
+        Person person = BenchmarkDatabase.createPersonWithGraph(nextPersonIndex);
+        nextPersonIndex += 4;
+        return peopleRepository.save(person);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAVE_ALL_BATCH_SIZE)
+    public long saveAll() {
+        List<Person> people = BenchmarkDatabase.createPeople(nextPersonIndex, nextPersonIndex + SAVE_ALL_BATCH_SIZE).toList();
+        nextPersonIndex += SAVE_ALL_BATCH_SIZE;
+        return peopleRepository.saveAll(people, SAVE_ALL_BATCH_SIZE);
+    }
+
+    @Benchmark
+    public Optional<Person> findByIdCold(GraphState graphState) {
+        return graphState.peopleRepository.findById(randomId(ids.length));
+    }
+
+    @Benchmark
+    public Optional<Person> findByIdWarm(GraphState graphState) {
+        return graphState.cachingPeopleRepository.findById(randomId(WARM_ID_COUNT));
+    }
+
+    @Benchmark
+    public List<Person> findAll() {
+        return peopleRepository.findAll();
+    }
+
+    @Benchmark
+    public List<Person> findPage() {
+        return peopleRepository.findPage(randomId(ids.length), 100);
+    }
+
+    @Benchmark
+    public void streamAll(Blackhole blackhole) {
+        try (Stream<Person> people = peopleRepository.streamAll()) {
+            people.forEach(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public long count() {
+        return peopleRepository.count();
+    }
+
+    @Benchmark
+    public void update() {
+        Person person = new Person(randomId(ids.length), "Updated", "Person",
+                BenchmarkDatabase.createPerson(0).getDob(), new BigDecimal("50000.50"));
+        peopleRepository.update(person);
+    }
+
+    @Benchmark
+    public int saveAndDelete() {
+        Person person = peopleRepository.save(BenchmarkDatabase.createPerson(nextPersonIndex++));
+        return peopleRepository.delete(person);
+    }
+
+    private long randomId(int bound) {
+        return ids[ThreadLocalRandom.current().nextInt(bound)];
+    }
+}
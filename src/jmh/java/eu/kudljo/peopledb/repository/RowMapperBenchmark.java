@@ -0,0 +1,104 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of mapping a 1M row result with the compiled {@link PersonRowMapper} against the alias
+ * lookups it replaced: per column a prefixed alias, a metadata call, a map lookup and an untyped getter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class RowMapperBenchmark {
+    private static final int ROW_COUNT = 1_000_000;
+    private static final String SELECT_PEOPLE_SQL = """
+            SELECT PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME,
+            PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL
+            FROM PEOPLE AS PARENT
+            """;
+
+    private Connection connection;
+    private PreparedStatement preparedStatement;
+    private RowMapper<Person> compiledRowMapper;
+    private Map<String, Integer> aliasColumnIndexMap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = BenchmarkDatabase.create();
+        try (PeopleRepository peopleRepository = new PeopleRepository(connection)) {
+            BenchmarkDatabase.seed(peopleRepository, ROW_COUNT);
+        }
+        preparedStatement = connection.prepareStatement(SELECT_PEOPLE_SQL);
+        preparedStatement.setFetchSize(CRUDRepository.DEFAULT_FETCH_SIZE);
+        compiledRowMapper = new PersonRowMapper(preparedStatement.getMetaData());
+        aliasColumnIndexMap = new HashMap<>();
+        for (int columnIndex = 1; columnIndex <= preparedStatement.getMetaData().getColumnCount(); columnIndex++) {
+            aliasColumnIndexMap.put(preparedStatement.getMetaData().getColumnLabel(columnIndex), columnIndex);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        preparedStatement.close();
+        BenchmarkDatabase.shutdown(connection);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void compiledRowMapper(Blackhole blackhole) throws SQLException {
+        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+            while (resultSet.next()) {
+                blackhole.consume(compiledRowMapper.mapRow(resultSet));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void aliasLookups(Blackhole blackhole) throws SQLException {
+        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+            while (resultSet.next()) {
+                blackhole.consume(mapByAlias(resultSet, "PARENT_"));
+            }
+        }
+    }
+
+    private Person mapByAlias(ResultSet resultSet, String aliasPrefix) throws SQLException {
+        Long personId = getValueByAlias(aliasPrefix + "ID", resultSet, Long.class);
+        String firstName = getValueByAlias(aliasPrefix + "FIRST_NAME", resultSet, String.class);
+        String lastName = getValueByAlias(aliasPrefix + "LAST_NAME", resultSet, String.class);
+        ZonedDateTime dob = ZonedDateTime.of(getValueByAlias(aliasPrefix + "DOB", resultSet, Timestamp.class).toLocalDateTime(), ZoneId.of("+0"));
+        BigDecimal salary = getValueByAlias(aliasPrefix + "SALARY", resultSet, BigDecimal.class);
+        return new Person(personId, firstName, lastName, dob, salary);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getValueByAlias(String alias, ResultSet resultSet, Class<T> clazz) throws SQLException {
+        int columnCount = resultSet.getMetaData().getColumnCount();
+        int foundIndex = aliasColumnIndexMap.getOrDefault(alias, 0);
+        return foundIndex == 0 || foundIndex > columnCount ? null : (T) resultSet.getObject(foundIndex);
+    }
+}
@@ -0,0 +1,16 @@
+package eu.kudljo.peopledb.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the SQL selecting the columns of a record projection, one column per record component,
+ * matched by name: component {@code lastName} reads column {@code LAST_NAME}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Projection {
+    String value();
+}
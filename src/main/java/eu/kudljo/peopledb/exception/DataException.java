@@ -1,6 +1,8 @@
 package eu.kudljo.peopledb.exception;
 
 public class DataException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
     public DataException(String message) {
         super(message);
     }
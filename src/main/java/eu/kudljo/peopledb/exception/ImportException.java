@@ -0,0 +1,20 @@
+package eu.kudljo.peopledb.exception;
+
+public class ImportException extends DataException {
+    private static final long serialVersionUID = 1L;
+
+    private final long committedOffset;
+
+    public ImportException(String message, long committedOffset, Throwable exception) {
+        super(message, exception);
+        this.committedOffset = committedOffset;
+    }
+
+    /**
+     * @return Number of data rows that were committed before the failure.
+     * Pass it as the start offset to resume the import.
+     */
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+}
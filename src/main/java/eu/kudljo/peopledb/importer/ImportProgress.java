@@ -0,0 +1,8 @@
+package eu.kudljo.peopledb.importer;
+
+public record ImportProgress(long committedOffset, long importedRows, long elapsedNanos) {
+
+    public double rowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : importedRows * 1_000_000_000d / elapsedNanos;
+    }
+}
@@ -0,0 +1,278 @@
+package eu.kudljo.peopledb.importer;
+
+import eu.kudljo.peopledb.exception.ImportException;
+import eu.kudljo.peopledb.model.Person;
+import eu.kudljo.peopledb.repository.PeopleRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Imports people from the HR CSV export (header row + one person per row).
+ * <p>
+ * A reader thread splits the file into chunks, worker threads parse the chunks to {@link Person}s
+ * and the calling thread saves them in batches through {@link PeopleRepository#saveAll}, committing
+ * every {@link #setCommitInterval(int) commit interval} rows. The number of chunks in flight is bounded,
+ * so a slow database blocks the reader instead of filling the heap.
+ * <p>
+ * Each commit interval is one {@link PeopleRepository#inTransaction transaction} of the repository,
+ * on the connection it gets from its own connection or data source.
+ */
+public class PeopleCsvImporter {
+    private static final DateTimeFormatter DOB_FORMATTER = DateTimeFormatter.ofPattern("M/d/yyyy");
+    private static final DateTimeFormatter TOB_FORMATTER = DateTimeFormatter.ofPattern("hh:mm:ss a", Locale.ENGLISH);
+    private static final ZoneId ZONE_ID = ZoneId.of("+0");
+    private static final Future<List<Person>> END_OF_FILE = CompletableFuture.completedFuture(List.of());
+
+    private final PeopleRepository peopleRepository;
+    private int workerCount = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = 1000;
+    private int commitInterval = 10_000;
+    // 0 until set, the bound is then twice the worker count of the import
+    private int maxPendingChunks;
+    private Consumer<ImportProgress> progressListener = progress -> { };
+
+    public PeopleCsvImporter(PeopleRepository peopleRepository) {
+        this.peopleRepository = peopleRepository;
+    }
+
+    public PeopleCsvImporter setWorkerCount(int workerCount) {
+        this.workerCount = requirePositive(workerCount, "Worker count");
+        return this;
+    }
+
+    /**
+     * @param chunkSize Rows parsed by one worker task and saved in one JDBC batch
+     */
+    public PeopleCsvImporter setChunkSize(int chunkSize) {
+        this.chunkSize = requirePositive(chunkSize, "Chunk size");
+        return this;
+    }
+
+    /**
+     * @param commitInterval Rows after which the transaction is committed, rounded up to whole chunks
+     */
+    public PeopleCsvImporter setCommitInterval(int commitInterval) {
+        this.commitInterval = requirePositive(commitInterval, "Commit interval");
+        return this;
+    }
+
+    /**
+     * @param maxPendingChunks Parsed or in-progress chunks waiting for the writer before the reader blocks,
+     *                         twice the worker count unless set
+     */
+    public PeopleCsvImporter setMaxPendingChunks(int maxPendingChunks) {
+        this.maxPendingChunks = requirePositive(maxPendingChunks, "Max pending chunks");
+        return this;
+    }
+
+    /**
+     * @param progressListener Called on the importing thread after each saved chunk and after each commit.
+     *                         Its {@link ImportProgress#committedOffset() committed offset} only moves on commits,
+     *                         its {@link ImportProgress#importedRows() imported rows} also count the uncommitted ones.
+     */
+    public PeopleCsvImporter setProgressListener(Consumer<ImportProgress> progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    public long importFile(Path file) {
+        return importFile(file, 0);
+    }
+
+    /**
+     * @see #importFrom(Reader, long)
+     */
+    public long importFile(Path file, long startOffset) {
+        BufferedReader bufferedReader;
+        try {
+            bufferedReader = Files.newBufferedReader(file);
+        } catch (IOException e) {
+            throw failImport(startOffset, e);
+        }
+        return importFrom(bufferedReader, startOffset);
+    }
+
+    /**
+     * @param csv         CSV export with its header row, closed when the import ends
+     * @param startOffset Number of data rows to skip, e.g. {@link ImportException#getCommittedOffset()}
+     *                    of a failed import
+     * @return Offset after the last imported row, i.e. {@code startOffset} + imported rows
+     * @throws ImportException if reading, parsing or saving fails; rows up to its committed offset are stored
+     */
+    public long importFrom(Reader csv, long startOffset) {
+        int workerCount = this.workerCount;
+        BlockingQueue<Future<List<Person>>> pendingChunks = new ArrayBlockingQueue<>(
+                maxPendingChunks > 0 ? maxPendingChunks : 2 * workerCount);
+        ExecutorService parsers = Executors.newFixedThreadPool(workerCount);
+        BufferedReader bufferedReader = csv instanceof BufferedReader buffered ? buffered : new BufferedReader(csv);
+        Thread reader = new Thread(() -> readChunks(bufferedReader, startOffset, parsers, pendingChunks), "people-csv-reader");
+        reader.setDaemon(true);
+
+        ImportCounts counts = new ImportCounts(startOffset, System.nanoTime());
+        // started before the repository is used, so it always runs to close the reader
+        reader.start();
+        try {
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                endOfFile = peopleRepository.inTransaction(() -> saveCommitInterval(pendingChunks, counts));
+                counts.commit();
+                progressListener.accept(counts.toProgress());
+            }
+            return counts.committedOffset;
+        } catch (PendingChunkException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw failImport(counts.committedOffset, e.getCause() instanceof ExecutionException
+                    ? e.getCause().getCause() : e.getCause());
+        } catch (RuntimeException e) {
+            throw failImport(counts.committedOffset, e);
+        } finally {
+            reader.interrupt();
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * Saves the parsed chunks until the commit interval is reached or the file ends.
+     *
+     * @return Whether the file ended
+     */
+    private boolean saveCommitInterval(BlockingQueue<Future<List<Person>>> pendingChunks, ImportCounts counts) {
+        try {
+            Future<List<Person>> chunk;
+            while ((chunk = pendingChunks.take()) != END_OF_FILE) {
+                List<Person> people = chunk.get();
+                peopleRepository.saveAll(people, chunkSize);
+                counts.uncommittedRows += people.size();
+                if (counts.uncommittedRows >= commitInterval) {
+                    return false;
+                }
+                progressListener.accept(counts.toProgress());
+            }
+            return true;
+        } catch (InterruptedException | ExecutionException e) {
+            // unchecked, so the transaction rolls back
+            throw new PendingChunkException(e);
+        }
+    }
+
+    private void readChunks(BufferedReader csv, long startOffset, ExecutorService parsers, BlockingQueue<Future<List<Person>>> pendingChunks) {
+        try (BufferedReader bufferedReader = csv) {
+            // header row + already imported rows
+            for (long skipped = 0; skipped <= startOffset; skipped++) {
+                if (bufferedReader.readLine() == null) {
+                    break;
+                }
+            }
+            List<String> lines = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    pendingChunks.put(submitChunk(lines, parsers));
+                    lines = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!lines.isEmpty()) {
+                pendingChunks.put(submitChunk(lines, parsers));
+            }
+            pendingChunks.put(END_OF_FILE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                pendingChunks.put(CompletableFuture.failedFuture(e));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Future<List<Person>> submitChunk(List<String> lines, ExecutorService parsers) {
+        return parsers.submit(() -> {
+            List<Person> people = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                people.add(parsePerson(line));
+            }
+            return people;
+        });
+    }
+
+    static Person parsePerson(String line) {
+        String[] columns = line.split(",");
+        LocalDate dob = LocalDate.parse(columns[10], DOB_FORMATTER);
+        LocalTime tob = LocalTime.parse(columns[11], TOB_FORMATTER);
+        Person person = new Person(columns[2], columns[4], ZonedDateTime.of(LocalDateTime.of(dob, tob), ZONE_ID));
+        person.setSalary(new BigDecimal(columns[25]));
+        person.setEmail(columns[6]);
+        return person;
+    }
+
+    private static ImportException failImport(long committedOffset, Throwable cause) {
+        return new ImportException("Import failed after %d committed rows".formatted(committedOffset), committedOffset, cause);
+    }
+
+    private static final class ImportCounts {
+        private final long startOffset;
+        private final long startNanos;
+        private long committedOffset;
+        private long uncommittedRows;
+
+        private ImportCounts(long startOffset, long startNanos) {
+            this.startOffset = startOffset;
+            this.startNanos = startNanos;
+            this.committedOffset = startOffset;
+        }
+
+        private void commit() {
+            committedOffset += uncommittedRows;
+            uncommittedRows = 0;
+        }
+
+        private ImportProgress toProgress() {
+            return new ImportProgress(committedOffset, committedOffset - startOffset + uncommittedRows,
+                    System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Failure to take a parsed chunk: interrupted, or its parsing failed.
+     */
+    private static final class PendingChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private PendingChunkException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be greater than 0");
+        }
+        return value;
+    }
+}
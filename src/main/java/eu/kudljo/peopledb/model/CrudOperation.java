@@ -2,10 +2,18 @@ package eu.kudljo.peopledb.model;
 
 public enum CrudOperation {
     SAVE,
+    UPSERT,
     UPDATE,
     FIND_BY_ID,
+    FIND_BY_IDS,
     FIND_ALL,
+    STREAM_ALL,
+    FIND_PAGE,
     DELETE_BY_ID,
     DELETE_BY_IDS,
-    COUNT
+    COUNT,
+    /**
+     * Query of the caller or of a projection, mapped by the caller's row mapper or to a record
+     */
+    QUERY
 }
@@ -0,0 +1,15 @@
+package eu.kudljo.peopledb.model;
+
+/**
+ * When a repository loads the associations of the entities it finds.
+ */
+public enum FetchPlan {
+    /**
+     * Each association is loaded by its own query when its getter is first called, associations never read cost nothing.
+     */
+    LAZY,
+    /**
+     * Associations are loaded with the entity, as the {@link GraphLoadMode} of the repository says.
+     */
+    EAGER
+}
@@ -0,0 +1,16 @@
+package eu.kudljo.peopledb.model;
+
+/**
+ * How a repository loads the associations of the entities it finds.
+ */
+public enum GraphLoadMode {
+    /**
+     * One query joining all associations, the columns of the entity are repeated on each row of its children.
+     */
+    JOIN,
+    /**
+     * One query for the entities, then one query per association selecting the associated rows
+     * of all loaded entities by an IN list of their IDs.
+     */
+    SELECT_IN
+}
@@ -6,6 +6,8 @@ import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Optional;
@@ -26,6 +28,7 @@ public class Person {
     private Optional<Person> spouse = Optional.empty();
     private Set<Person> children = new HashSet<>();
     private Optional<Person> parent = Optional.empty();
+    private final Set<PersonAttribute> dirtyAttributes = EnumSet.allOf(PersonAttribute.class);
 
     public Person(long personId, String firstName, String lastName, ZonedDateTime dob, BigDecimal salary) {
         this(personId, firstName, lastName, dob);
@@ -57,6 +60,7 @@ public class Person {
 
     public void setFirstName(String firstName) {
         this.firstName = firstName;
+        dirtyAttributes.add(PersonAttribute.FIRST_NAME);
     }
 
     public String getLastName() {
@@ -65,6 +69,7 @@ public class Person {
 
     public void setLastName(String lastName) {
         this.lastName = lastName;
+        dirtyAttributes.add(PersonAttribute.LAST_NAME);
     }
 
     public ZonedDateTime getDob() {
@@ -73,6 +78,7 @@ public class Person {
 
     public void setDob(ZonedDateTime dob) {
         this.dob = dob;
+        dirtyAttributes.add(PersonAttribute.DOB);
     }
 
     public BigDecimal getSalary() {
@@ -81,6 +87,7 @@ public class Person {
 
     public void setSalary(BigDecimal salary) {
         this.salary = salary;
+        dirtyAttributes.add(PersonAttribute.SALARY);
     }
 
     public String getEmail() {
@@ -132,6 +139,23 @@ public class Person {
         return parent;
     }
 
+    /**
+     * Not synchronized: a person, also one shared through the entity cache, must not be modified by one thread
+     * while another one reads or updates it.
+     *
+     * @return Attributes set since the person was created, saved, loaded or updated, i.e. all of them for a new person
+     */
+    public Set<PersonAttribute> getDirtyAttributes() {
+        return Collections.unmodifiableSet(dirtyAttributes);
+    }
+
+    /**
+     * Called by the repository once the attributes are in sync with the database.
+     */
+    public void markClean() {
+        dirtyAttributes.clear();
+    }
+
     @Override
     public String toString() {
         return "Person{" + "id=" + id +
@@ -144,8 +168,8 @@ public class Person {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Person person = (Person) o;
+        // instanceof, so a person equals its lazy loading subclass with the same values
+        if (!(o instanceof Person person)) return false;
 
         // usage of truncate for remove offset of zone, which is not stored in database
         return Objects.equals(id, person.id)
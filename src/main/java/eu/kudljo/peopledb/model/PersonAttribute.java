@@ -0,0 +1,21 @@
+package eu.kudljo.peopledb.model;
+
+/**
+ * Attributes of a {@link Person} written by an update, tracked by {@link Person#getDirtyAttributes()}.
+ */
+public enum PersonAttribute {
+    FIRST_NAME("FIRST_NAME"),
+    LAST_NAME("LAST_NAME"),
+    DOB("DOB"),
+    SALARY("SALARY");
+
+    private final String columnName;
+
+    PersonAttribute(String columnName) {
+        this.columnName = columnName;
+    }
+
+    public String columnName() {
+        return columnName;
+    }
+}
@@ -0,0 +1,23 @@
+package eu.kudljo.peopledb.model;
+
+/**
+ * Position of the last person of a page sorted by a {@link PersonSortKey}, the next page starts after it.
+ *
+ * @param sortKeyValue Value of the sort key of the person, may be null
+ * @param id           ID of the person, the tie-breaker of people with equal values
+ */
+public record PersonPageCursor(Object sortKeyValue, long id) {
+
+    /**
+     * @return Cursor after the person, which must have an ID
+     */
+    public static PersonPageCursor after(PersonSortKey sortKey, Person person) {
+        Object sortKeyValue = switch (sortKey) {
+            case FIRST_NAME -> person.getFirstName();
+            case LAST_NAME -> person.getLastName();
+            case DOB -> person.getDob();
+            case SALARY -> person.getSalary();
+        };
+        return new PersonPageCursor(sortKeyValue, person.getId());
+    }
+}
@@ -0,0 +1,12 @@
+package eu.kudljo.peopledb.model;
+
+import eu.kudljo.peopledb.annotation.Projection;
+
+import java.math.BigDecimal;
+
+/**
+ * Salary of a person for payroll reports, without the rest of the person and its associations.
+ */
+@Projection("SELECT ID, LAST_NAME, SALARY FROM PEOPLE")
+public record PersonSalary(long id, String lastName, BigDecimal salary) {
+}
@@ -0,0 +1,18 @@
+package eu.kudljo.peopledb.model;
+
+public enum PersonSortKey {
+    FIRST_NAME("FIRST_NAME"),
+    LAST_NAME("LAST_NAME"),
+    DOB("DOB"),
+    SALARY("SALARY");
+
+    private final String columnName;
+
+    PersonSortKey(String columnName) {
+        this.columnName = columnName;
+    }
+
+    public String columnName() {
+        return columnName;
+    }
+}
@@ -0,0 +1,19 @@
+package eu.kudljo.peopledb.model;
+
+/**
+ * Salary statistics of a group of people, aggregated by the database. Aggregates of salaries are 0
+ * when the group has none, amounts are exact up to 2^53 cents.
+ *
+ * @param headcount People of the group, including those without salary
+ * @param total     Sum of the salaries
+ * @param median    50th percentile, interpolated between the two middle salaries
+ * @param p90       90th percentile, interpolated
+ */
+public record SalaryStats(long headcount,
+                          double total,
+                          double average,
+                          double minimum,
+                          double maximum,
+                          double median,
+                          double p90) {
+}
@@ -0,0 +1,9 @@
+package eu.kudljo.peopledb.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface ConnectionFactory {
+    Connection createConnection() throws SQLException;
+}
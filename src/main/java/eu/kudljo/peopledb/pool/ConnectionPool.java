@@ -0,0 +1,293 @@
+package eu.kudljo.peopledb.pool;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Lightweight connection pool. {@link #getConnection()} borrows a connection, closing it returns it to the pool.
+ * <p>
+ * At most {@code maxSize} connections are borrowed at once, other threads wait up to the acquire timeout.
+ * Connections idle for longer than the validation interval are checked with {@link Connection#isValid(int)}
+ * before they are handed out again. Returned connections are rolled back and switched back to auto-commit.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+    public static final Duration DEFAULT_ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_VALIDATION_INTERVAL = Duration.ofSeconds(5);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final ConnectionFactory connectionFactory;
+    private final int maxSize;
+    private final long acquireTimeoutNanos;
+    private final Semaphore permits;
+    private final BlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private volatile long validationIntervalNanos = DEFAULT_VALIDATION_INTERVAL.toNanos();
+    private volatile boolean closed;
+    private PrintWriter logWriter;
+
+    public ConnectionPool(String url, int minSize, int maxSize) throws SQLException {
+        this(() -> DriverManager.getConnection(url), minSize, maxSize, DEFAULT_ACQUIRE_TIMEOUT);
+    }
+
+    /**
+     * @param minSize Connections opened up front
+     * @param maxSize Maximum of connections borrowed at the same time
+     */
+    public ConnectionPool(ConnectionFactory connectionFactory, int minSize, int maxSize, Duration acquireTimeout) throws SQLException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Pool size must satisfy 0 <= minSize <= maxSize and maxSize > 0");
+        }
+        this.connectionFactory = connectionFactory;
+        this.maxSize = maxSize;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.permits = new Semaphore(maxSize, true);
+        for (int index = 0; index < minSize; index++) {
+            idleConnections.offer(new IdleConnection(createConnection(), System.nanoTime()));
+        }
+    }
+
+    public void setValidationInterval(Duration validationInterval) {
+        this.validationIntervalNanos = validationInterval.toNanos();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        long waitNanos = System.nanoTime() - start;
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        if (!acquired) {
+            timeoutCount.increment();
+            throw new SQLTimeoutException("No connection available within %d ms".formatted(
+                    TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos)));
+        }
+
+        try {
+            Connection connection = takeIdleOrCreate();
+            activeConnections.incrementAndGet();
+            acquireCount.increment();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new PooledConnectionHandler(connection));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection takeIdleOrCreate() throws SQLException {
+        IdleConnection idleConnection;
+        while ((idleConnection = idleConnections.pollFirst()) != null) {
+            if (isUsable(idleConnection)) {
+                return idleConnection.connection();
+            }
+            closeConnection(idleConnection.connection());
+        }
+        return createConnection();
+    }
+
+    private boolean isUsable(IdleConnection idleConnection) {
+        if (System.nanoTime() - idleConnection.idleSinceNanos() < validationIntervalNanos) {
+            return true;
+        }
+        try {
+            return idleConnection.connection().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection createConnection() throws SQLException {
+        Connection connection = connectionFactory.createConnection();
+        totalConnections.incrementAndGet();
+        return connection;
+    }
+
+    private void closeConnection(Connection connection) {
+        totalConnections.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void release(Connection connection) {
+        activeConnections.decrementAndGet();
+        try {
+            if (closed || connection.isClosed()) {
+                closeConnection(connection);
+                return;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            // LIFO keeps the most recently used connections warm and lets the others go idle
+            idleConnections.offerFirst(new IdleConnection(connection, System.nanoTime()));
+            if (closed && idleConnections.remove(new IdleConnection(connection, 0))) {
+                closeConnection(connection);
+            }
+        } catch (SQLException e) {
+            closeConnection(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public PoolMetrics getMetrics() {
+        return new PoolMetrics(totalConnections.get(), activeConnections.get(), idleConnections.size(), maxSize,
+                acquireCount.sum(), timeoutCount.sum(), totalWaitNanos.sum(), maxWaitNanos.get());
+    }
+
+    /**
+     * Closes idle connections. Borrowed connections are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        IdleConnection idleConnection;
+        while ((idleConnection = idleConnections.pollFirst()) != null) {
+            closeConnection(idleConnection.connection());
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Credentials are given by the connection factory");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private record IdleConnection(Connection connection, long idleSinceNanos) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdleConnection idleConnection && idleConnection.connection == connection;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(connection);
+        }
+    }
+
+    /**
+     * Handler of the connection handed out by one {@link #getConnection()} call.
+     * {@code close()} returns the connection to the pool, any later call fails.
+     */
+    private final class PooledConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+        private volatile boolean returned;
+
+        PooledConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(connection);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + connection;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(connection)) {
+                        return connection;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(connection)) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection was returned to the pool");
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
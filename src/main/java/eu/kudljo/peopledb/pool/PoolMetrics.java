@@ -0,0 +1,25 @@
+package eu.kudljo.peopledb.pool;
+
+/**
+ * Snapshot of {@link ConnectionPool} counters.
+ *
+ * @param acquireCount   Successful {@link ConnectionPool#getConnection()} calls
+ * @param timeoutCount   Calls that gave up after the acquire timeout
+ * @param totalWaitNanos Time all acquiring threads spent waiting for a free connection
+ * @param maxWaitNanos   Longest wait of a single acquire
+ */
+public record PoolMetrics(int totalConnections, int activeConnections, int idleConnections, int maxSize,
+                          long acquireCount, long timeoutCount, long totalWaitNanos, long maxWaitNanos) {
+
+    /**
+     * @return Share of the maximum pool size that is currently borrowed, from 0 to 1
+     */
+    public double utilization() {
+        return (double) activeConnections / maxSize;
+    }
+
+    public double averageWaitNanos() {
+        long attempts = acquireCount + timeoutCount;
+        return attempts == 0 ? 0 : (double) totalWaitNanos / attempts;
+    }
+}
@@ -3,11 +3,12 @@ package eu.kudljo.peopledb.repository;
 import eu.kudljo.peopledb.annotation.SQL;
 import eu.kudljo.peopledb.model.Address;
 import eu.kudljo.peopledb.model.CrudOperation;
-import eu.kudljo.peopledb.model.Region;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
 public class AddressRepository extends CRUDRepository<Address> {
@@ -16,27 +17,41 @@ public class AddressRepository extends CRUDRepository<Address> {
         super(connection);
     }
 
+    public AddressRepository(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    AddressRepository(ConnectionProvider connectionProvider) {
+        super(connectionProvider);
+    }
+
     @Override
     @SQL(operationType = CrudOperation.SAVE, value = """
             INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY)
             VALUES (?, ?, ?, ?, ?, ?, ?, ?)
             """)
     void mapForSave(Address entity, PreparedStatement preparedStatement) throws SQLException {
-        preparedStatement.setString(1, entity.streetAddress());
-        preparedStatement.setString(2, entity.address2());
-        preparedStatement.setString(3, entity.city());
-        preparedStatement.setString(4, entity.state());
-        preparedStatement.setString(5, entity.postcode());
-        preparedStatement.setString(6, entity.county());
-        preparedStatement.setString(7, entity.region().toString());
-        preparedStatement.setString(8, entity.country());
+        AddressMapper.mapForSave(entity, preparedStatement);
     }
 
+    /**
+     * Binds the columns in the order of the INSERT, followed by the ID.
+     */
     @Override
+    @SQL(operationType = CrudOperation.UPDATE, value = """
+            UPDATE ADDRESSES
+            SET STREET_ADDRESS = ?, ADDRESS2 = ?, CITY = ?, STATE = ?, POSTCODE = ?, COUNTY = ?, REGION = ?, COUNTRY = ?
+            WHERE ID = ?
+            """)
     void mapForUpdate(Address entity, PreparedStatement preparedStatement) throws SQLException {
-
+        AddressMapper.mapForSave(entity, preparedStatement);
+        preparedStatement.setLong(9, entity.id());
     }
 
+    /**
+     * Carries the SQL of the query, its rows are mapped by {@link #extractEntityFromResultSet(ResultSet, RowMapper)}
+     * with the mapper compiled once for it.
+     */
     @Override
     @SQL(operationType = CrudOperation.FIND_BY_ID, value = """
             SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
@@ -44,15 +59,19 @@ public class AddressRepository extends CRUDRepository<Address> {
             WHERE ID = ?
             """)
     Address extractEntityFromResultSet(ResultSet resultSet) throws SQLException {
-        long id = resultSet.getLong("ID");
-        String streetAddress = resultSet.getString("STREET_ADDRESS");
-        String address2 = resultSet.getString("ADDRESS2");
-        String city = resultSet.getString("CITY");
-        String state = resultSet.getString("STATE");
-        String postcode = resultSet.getString("POSTCODE");
-        String county = resultSet.getString("COUNTY");
-        Region region = Region.valueOf(resultSet.getString("REGION").toUpperCase());
-        String country = resultSet.getString("COUNTRY");
-        return new Address(id, streetAddress, address2, city, state, postcode, country, county, region);
+        return compileRowMapper(resultSet.getMetaData()).mapRow(resultSet);
+    }
+
+    @Override
+    Address extractEntityFromResultSet(ResultSet resultSet, RowMapper<Address> rowMapper) throws SQLException {
+        return rowMapper.mapRow(resultSet);
+    }
+
+    /**
+     * @return Mapper generated from the constructor of Address at compile time
+     */
+    @Override
+    RowMapper<Address> compileRowMapper(ResultSetMetaData metaData) throws SQLException {
+        return new AddressMapper(metaData);
     }
 }
@@ -0,0 +1,143 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.Person;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade of a {@link PeopleRepository}: each call runs on the executor and returns a future,
+ * so independent lookups, e.g. of a person, their spouse and their addresses, overlap instead of waiting
+ * for each other.
+ * <p>
+ * Operations only overlap if the repository borrows a connection per operation, i.e. was created with
+ * a {@link DataSource} such as a {@link eu.kudljo.peopledb.pool.ConnectionPool}. At most {@code maxInFlight}
+ * operations run at the same time, the others wait for a permit on their executor thread, so it should not
+ * be greater than the pool size. A {@link Session} of the calling thread is not visible to the operations.
+ */
+public class AsyncPeopleRepository implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final PeopleRepository peopleRepository;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final Semaphore inFlightPermits;
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+
+    /**
+     * Runs the operations on virtual threads where the JVM has them, otherwise on {@code maxInFlight} platform threads.
+     * The repository and its executor are closed by {@link #close()}.
+     */
+    public AsyncPeopleRepository(DataSource dataSource, int maxInFlight) {
+        this(new PeopleRepository(dataSource), createDefaultExecutor(maxInFlight), maxInFlight, true);
+    }
+
+    /**
+     * @param executor Executor of the operations, owned by the caller
+     */
+    public AsyncPeopleRepository(PeopleRepository peopleRepository, Executor executor, int maxInFlight) {
+        this(peopleRepository, executor, maxInFlight, false);
+    }
+
+    private AsyncPeopleRepository(PeopleRepository peopleRepository, Executor executor, int maxInFlight, boolean ownsExecutor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Max in flight must be greater than 0");
+        }
+        this.peopleRepository = peopleRepository;
+        this.executor = executor;
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+        this.inFlightPermits = new Semaphore(maxInFlight, true);
+    }
+
+    public CompletableFuture<Optional<Person>> findByIdAsync(Long id) {
+        return supplyAsync(() -> peopleRepository.findById(id));
+    }
+
+    public CompletableFuture<List<Person>> findAllByIdAsync(Collection<Long> ids) {
+        List<Long> idsCopy = List.copyOf(ids);
+        return supplyAsync(() -> peopleRepository.findAllById(idsCopy));
+    }
+
+    public CompletableFuture<Person> saveAsync(Person person) {
+        return supplyAsync(() -> peopleRepository.save(person));
+    }
+
+    public PeopleRepository getPeopleRepository() {
+        return peopleRepository;
+    }
+
+    /**
+     * @return Operations submitted and not completed yet, waiting or running
+     */
+    public int getInFlightCount() {
+        return inFlightCount.get();
+    }
+
+    private <R> CompletableFuture<R> supplyAsync(Supplier<R> operation) {
+        inFlightCount.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                inFlightPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return operation.get();
+            } finally {
+                inFlightPermits.release();
+            }
+        }, executor).whenComplete((result, exception) -> inFlightCount.decrementAndGet());
+    }
+
+    /**
+     * Shuts down the executor and closes the repository if they were created by this facade,
+     * after the submitted operations completed.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor == null) {
+            return;
+        }
+        ownedExecutor.shutdown();
+        try {
+            if (!ownedExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                ownedExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            ownedExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            peopleRepository.close();
+        }
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} is looked up reflectively, so the code still runs
+     * on JVMs without virtual threads or with them only in preview.
+     */
+    private static ExecutorService createDefaultExecutor(int maxInFlight) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newFixedThreadPool(maxInFlight, runnable -> {
+                Thread thread = new Thread(runnable, "async-people-repository-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
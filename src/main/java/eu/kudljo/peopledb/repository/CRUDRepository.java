@@ -1,143 +1,1253 @@
 package eu.kudljo.peopledb.repository;
 
-import eu.kudljo.peopledb.annotation.Id;
-import eu.kudljo.peopledb.annotation.MultiSQL;
-import eu.kudljo.peopledb.annotation.SQL;
 import eu.kudljo.peopledb.exception.DataException;
 import eu.kudljo.peopledb.model.CrudOperation;
 
+import javax.sql.DataSource;
 import java.sql.*;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static java.util.stream.Collectors.joining;
+abstract class CRUDRepository<T> implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    /**
+     * Maximum of IDs bound to one IN list, well below the parameter limits of common drivers.
+     */
+    public static final int MAX_IN_LIST_SIZE = 1000;
+    private static final int MAX_CACHED_ROW_MAPPERS = 256;
+    private static final String IN_LIST_PLACEHOLDER = "(:ids)";
+    /**
+     * Sizes an IN list is padded to, see {@link #getInListSize}: each IN list query is prepared once per size.
+     */
+    static final int IN_LIST_SIZE_COUNT = Integer.numberOfTrailingZeros(Integer.highestOneBit(MAX_IN_LIST_SIZE - 1)) + 2;
 
-abstract class CRUDRepository<T> {
-    protected Connection connection;
-    private PreparedStatement savePrepareStatement;
-    private PreparedStatement findByIdPrepareStatement;
+    private final ConnectionProvider connectionProvider;
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+    private final LongAdder statementCacheHitCount = new LongAdder();
+    private final LongAdder statementCacheMissCount = new LongAdder();
+    private final Map<String, RowMapper<T>> rowMappers = new ConcurrentHashMap<>();
+    private final Map<ProjectionKey, RowMapper<?>> projectionMappers = new ConcurrentHashMap<>();
+    private final Map<String, Integer> parameterCounts = new ConcurrentHashMap<>();
+    private volatile EntityCache<T> entityCache;
+    private volatile RepositoryListener repositoryListener;
+    private final ThreadLocal<Integer> transactionDepth = ThreadLocal.withInitial(() -> 0);
 
+    /**
+     * All operations run on the given connection, which stays owned by the caller.
+     */
     public CRUDRepository(Connection connection) {
-        try {
-            this.connection = connection;
-            this.savePrepareStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.SAVE, this::getSaveSql), PreparedStatement.RETURN_GENERATED_KEYS);
-            this.findByIdPrepareStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.FIND_BY_ID, this::getFindByIdSql));
+        this(ConnectionProvider.of(connection));
+    }
+
+    /**
+     * Each operation borrows a connection from the data source, typically a {@link eu.kudljo.peopledb.pool.ConnectionPool},
+     * and returns it when done. Nested operations of the same thread share the borrowed connection.
+     */
+    public CRUDRepository(DataSource dataSource) {
+        this(ConnectionProvider.of(dataSource));
+    }
+
+    @SuppressWarnings("try")
+    CRUDRepository(ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+        try (ConnectionLease lease = acquireConnection()) {
+            getSaveStatement();
+            getCachedStatement(getSQLByAnnotation(CrudOperation.FIND_BY_ID, this::getFindByIdSql));
         } catch (SQLException e) {
             e.printStackTrace();
             throw new DataException("Unable to create prepared statements for CrudRepository", e);
         }
     }
 
+    /**
+     * Inserts the entity. Within a {@link Session}, entities that were already saved or loaded in it are skipped.
+     *
+     * @throws DataException if the entity or an entity it refers to cannot be saved
+     */
+    @SuppressWarnings("try")
     public T save(T entity) {
-        try {
+        Session session = Session.current();
+        if (session != null) {
+            if (session.isManaged(entity)) {
+                return entity;
+            }
+            session.manage(entity);
+        }
+        long startNanos = startOperation();
+        int recordsAffected = 0;
+        try (ConnectionLease lease = acquireConnection()) {
+            preSave(entity);
+            PreparedStatement savePrepareStatement = getSaveStatement();
             mapForSave(entity, savePrepareStatement);
-            int recordsAffected = savePrepareStatement.executeUpdate();
-            ResultSet resultSet = savePrepareStatement.getGeneratedKeys();
-            while (resultSet.next()) {
-                long id = resultSet.getLong(1);
-                setIdByAnnotation(id, entity);
-                postSave(entity, id);
-//                System.out.println(entity);
+            recordsAffected = savePrepareStatement.executeUpdate();
+            try (ResultSet resultSet = savePrepareStatement.getGeneratedKeys()) {
+                while (resultSet.next()) {
+                    long id = resultSet.getLong(1);
+                    setIdByAnnotation(id, entity);
+                    if (session != null) {
+                        session.register(entity, id);
+                    }
+                    postSave(entity, id);
+                }
             }
-//            System.out.printf("Records affected: %d%n", recordsAffected);
+            report(startNanos, CrudOperation.SAVE, getSQLByAnnotation(CrudOperation.SAVE, this::getSaveSql), 1, recordsAffected, null);
         } catch (SQLException e) {
-            e.printStackTrace();
+            report(startNanos, CrudOperation.SAVE, getSQLByAnnotation(CrudOperation.SAVE, this::getSaveSql), 1, recordsAffected, e);
+            throw new DataException("Unable to save " + entity, e);
         }
         return entity;
     }
 
-    public Optional<T> findById(Long id) {
-        T entity = null;
+    public long saveAll(Iterable<T> entities) {
+        return saveAll(entities, DEFAULT_BATCH_SIZE);
+    }
+
+    public long saveAll(Iterable<T> entities, int batchSize) {
+        return saveAll(StreamSupport.stream(entities.spliterator(), false), batchSize);
+    }
 
+    /**
+     * Saves entities in JDBC batches of {@code batchSize} rows, i.e. one round trip per batch
+     * instead of one per entity. Generated keys are mapped back onto the entities in batch order.
+     *
+     * @return Number of saved entities (without nested entities saved by {@link #preSave} and {@link #postSave})
+     * @throws DataException if any batch fails; entities of previous batches keep their IDs
+     */
+    @SuppressWarnings("try")
+    public long saveAll(Stream<T> entities, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        long savedCount = 0;
+        List<T> batch = new ArrayList<>(batchSize);
+        Iterator<T> iterator = entities.iterator();
+        try (ConnectionLease lease = acquireConnection()) {
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize) {
+                    savedCount += saveBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                savedCount += saveBatch(batch);
+            }
+        } catch (SQLException e) {
+            throw new DataException("Unable to acquire connection", e);
+        }
+        return savedCount;
+    }
+
+    public T upsert(T entity) {
+        upsertAll(List.of(entity), 1);
+        return entity;
+    }
+
+    public long upsertAll(Iterable<T> entities) {
+        return upsertAll(entities, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Inserts the entities, or updates the rows that already exist with the same key, in JDBC batches of
+     * {@code batchSize} rows (see {@link #getUpsertSql()}). Re-sent entities thus cost one round trip per batch
+     * like {@link #saveAll}, without looking them up first. The ID of the inserted or updated row is set on each entity.
+     * Nested entities are written by {@link #preUpsert} and {@link #postUpsert}.
+     *
+     * @return Number of upserted entities
+     * @throws DataException if any batch fails; entities of previous batches keep their IDs
+     */
+    @SuppressWarnings("try")
+    public long upsertAll(Iterable<T> entities, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        long upsertedCount = 0;
+        List<T> batch = new ArrayList<>(batchSize);
+        try (ConnectionLease lease = acquireConnection()) {
+            for (T entity : entities) {
+                batch.add(entity);
+                if (batch.size() == batchSize) {
+                    upsertedCount += writeBatch(batch, CrudOperation.UPSERT);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                upsertedCount += writeBatch(batch, CrudOperation.UPSERT);
+            }
+        } catch (SQLException e) {
+            throw new DataException("Unable to acquire connection", e);
+        }
+        return upsertedCount;
+    }
+
+    private int saveBatch(List<T> batch) {
+        return writeBatch(batch, CrudOperation.SAVE);
+    }
+
+    /**
+     * @param operation {@link CrudOperation#SAVE} or {@link CrudOperation#UPSERT}
+     */
+    private int writeBatch(List<T> batch, CrudOperation operation) {
+        Session session = Session.current();
+        if (session != null) {
+            batch = batch.stream()
+                    .filter(entity -> !session.isManaged(entity))
+                    .distinct()
+                    .toList();
+            batch.forEach(session::manage);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+        }
+        long startNanos = startOperation();
+        PreparedStatement savePrepareStatement = null;
         try {
-            findByIdPrepareStatement.setLong(1, id);
-            ResultSet resultSet = findByIdPrepareStatement.executeQuery();
-            while (resultSet.next()) {
-                entity = extractEntityFromResultSet(resultSet);
+            // dependencies are saved through the same statement, so they must go before the batch is built
+            if (operation == CrudOperation.UPSERT) {
+                preUpsert(batch);
+            } else {
+                batch.forEach(this::preSave);
+            }
+            savePrepareStatement = operation == CrudOperation.UPSERT ? getUpsertStatement() : getSaveStatement();
+            for (T entity : batch) {
+                if (operation == CrudOperation.UPSERT) {
+                    mapForUpsert(entity, savePrepareStatement);
+                } else {
+                    mapForSave(entity, savePrepareStatement);
+                }
+                savePrepareStatement.addBatch();
+            }
+            savePrepareStatement.executeBatch();
+
+            long[] ids = new long[batch.size()];
+            int savedCount = 0;
+            try (ResultSet resultSet = savePrepareStatement.getGeneratedKeys()) {
+                while (savedCount < ids.length && resultSet.next()) {
+                    ids[savedCount] = resultSet.getLong(1);
+                    setIdByAnnotation(ids[savedCount], batch.get(savedCount));
+                    if (session != null) {
+                        session.register(batch.get(savedCount), ids[savedCount]);
+                    }
+                    savedCount++;
+                }
             }
+            for (int index = 0; index < savedCount; index++) {
+                if (operation == CrudOperation.UPSERT) {
+                    postUpsert(batch.get(index), ids[index]);
+                } else {
+                    postSave(batch.get(index), ids[index]);
+                }
+            }
+            report(startNanos, operation, getWriteSql(operation), batch.size(), savedCount, null);
+            return savedCount;
+        } catch (SQLException e) {
+            clearBatch(savePrepareStatement);
+            report(startNanos, operation, getWriteSql(operation), batch.size(), 0, e);
+            throw new DataException("Unable to %s batch of %d entities".formatted(
+                    operation == CrudOperation.UPSERT ? "upsert" : "save", batch.size()), e);
+        }
+    }
+
+    private static void clearBatch(PreparedStatement preparedStatement) {
+        if (preparedStatement == null) {
+            return;
+        }
+        try {
+            preparedStatement.clearBatch();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Within a {@link Session}, returns the instance already loaded or saved in it if the entity is still found.
+     * That instance is returned as it is, the state just loaded from the database is not copied onto it.
+     */
+    public Optional<T> findById(Long id) {
+        return findById(id, getLoadByIdSql(), this::loadById);
+    }
+
+    /**
+     * Same as {@link #findById(Long)}, loading the entity with {@code entityLoader} if it is not in the entity cache.
+     *
+     * @param sql Query of the entity run by {@code entityLoader}, reported to the listeners
+     */
+    @SuppressWarnings("try")
+    Optional<T> findById(Long id, String sql, EntityLoader<T> entityLoader) {
+        EntityCache<T> entityCache = this.entityCache;
+        T entity = entityCache == null ? null : entityCache.get(id);
+        if (entity != null) {
+            return Optional.of(manage(entity));
+        }
+
+        long generation = entityCache == null ? 0 : entityCache.getGeneration(id);
+        long startNanos = startOperation();
+        try (ConnectionLease lease = acquireConnection()) {
+            entity = entityLoader.load(id);
+            report(startNanos, CrudOperation.FIND_BY_ID, sql, 1, entity == null ? 0 : 1, null);
         } catch (SQLException e) {
             e.printStackTrace();
+            report(startNanos, CrudOperation.FIND_BY_ID, sql, 1, 0, e);
         }
 
+        if (entity != null) {
+            if (entityCache != null) {
+                entityCache.put(id, entity, generation);
+            }
+            entity = manage(entity);
+        }
         return Optional.ofNullable(entity);
     }
 
+    /**
+     * Loads the entity with its associations from the database, on the connection leased by the current thread.
+     */
+    T loadById(Long id) throws SQLException {
+        T entity = null;
+        String sql = getSQLByAnnotation(CrudOperation.FIND_BY_ID, this::getFindByIdSql);
+        PreparedStatement findByIdPrepareStatement = getCachedStatement(sql);
+        findByIdPrepareStatement.setLong(1, id);
+        try (ResultSet resultSet = findByIdPrepareStatement.executeQuery()) {
+            RowMapper<T> rowMapper = getRowMapper(sql, resultSet);
+            while (resultSet.next()) {
+                entity = extractEntityFromResultSet(resultSet, rowMapper);
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Finds the entities of the given IDs with IN-list queries of at most {@link #MAX_IN_LIST_SIZE} IDs,
+     * i.e. one round trip per chunk instead of one per ID. Entities in the entity cache are not queried.
+     *
+     * @return Found entities in the order of the IDs, IDs without an entity are skipped
+     */
+    public List<T> findAllById(Collection<Long> ids) {
+        Map<Long, T> entitiesById = findAllByIdAsMap(ids);
+        List<T> entities = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T entity = entitiesById.get(id);
+            if (entity != null) {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * @return Found entities by ID, in the order of the IDs, IDs without an entity are missing
+     * @see #findAllById(Collection)
+     */
+    @SuppressWarnings("try")
+    public Map<Long, T> findAllByIdAsMap(Collection<Long> ids) {
+        Map<Long, T> entitiesById = new LinkedHashMap<>();
+        List<Long> missingIds = new ArrayList<>();
+        Map<Long, Long> generations = new HashMap<>();
+        EntityCache<T> entityCache = this.entityCache;
+        for (Long id : ids) {
+            if (id == null || entitiesById.containsKey(id)) {
+                continue;
+            }
+            T entity = entityCache == null ? null : entityCache.get(id);
+            // keeps the slot of the ID, so the map follows the order of the IDs
+            entitiesById.put(id, entity);
+            if (entity == null) {
+                missingIds.add(id);
+                if (entityCache != null) {
+                    generations.put(id, entityCache.getGeneration(id));
+                }
+            }
+        }
+
+        if (!missingIds.isEmpty()) {
+            long startNanos = startOperation();
+            String sql = getLoadAllByIdSql();
+            try (ConnectionLease lease = acquireConnection()) {
+                Map<Long, T> loadedEntities = loadAllById(missingIds);
+                loadedEntities.forEach((id, entity) -> {
+                    if (entityCache != null) {
+                        entityCache.put(id, entity, generations.get(id));
+                    }
+                    entitiesById.put(id, entity);
+                });
+                report(startNanos, CrudOperation.FIND_BY_IDS, sql, missingIds.size(), loadedEntities.size(), null);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                report(startNanos, CrudOperation.FIND_BY_IDS, sql, missingIds.size(), 0, e);
+            }
+        }
+
+        entitiesById.values().removeIf(Objects::isNull);
+        entitiesById.replaceAll((id, entity) -> manage(entity));
+        return entitiesById;
+    }
+
+    /**
+     * @return Query of the entity run by {@link #loadById}, reported to the listeners
+     */
+    String getLoadByIdSql() {
+        return getSQLByAnnotation(CrudOperation.FIND_BY_ID, this::getFindByIdSql);
+    }
+
+    /**
+     * @return Query of the entities run by {@link #loadAllById}, reported to the listeners
+     */
+    String getLoadAllByIdSql() {
+        return getSQLByAnnotation(CrudOperation.FIND_BY_IDS, this::getFindByIdsSql);
+    }
+
+    /**
+     * Loads the entities from the database, on the connection leased by the current thread.
+     *
+     * @return Found entities by ID, in any order
+     */
+    Map<Long, T> loadAllById(Collection<Long> ids) throws SQLException {
+        Map<Long, T> entities = new HashMap<>();
+        queryInChunks(getSQLByAnnotation(CrudOperation.FIND_BY_IDS, this::getFindByIdsSql), ids, (resultSet, rowMapper) -> {
+            T entity = rowMapper.mapRow(resultSet);
+            entities.put(getIdByAnnotation(entity), entity);
+        });
+        return entities;
+    }
+
+    @SuppressWarnings("try")
     public List<T> findAll() {
         List<T> entities = new ArrayList<>();
 
-        try {
-            PreparedStatement preparedStatement = connection.prepareStatement(
-                    getSQLByAnnotation(CrudOperation.FIND_ALL, this::getFindAllSql),
-                    ResultSet.TYPE_SCROLL_INSENSITIVE,
-                    ResultSet.CONCUR_READ_ONLY);
-            ResultSet resultSet = preparedStatement.executeQuery();
-            while (resultSet.next()) {
-                entities.add(extractEntityFromResultSet(resultSet));
+        long startNanos = startOperation();
+        String sql = getSQLByAnnotation(CrudOperation.FIND_ALL, this::getFindAllSql);
+        try (ConnectionLease lease = acquireConnection()) {
+            PreparedStatement preparedStatement = getStatementCache().prepareScrollable(sql);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                RowMapper<T> rowMapper = getRowMapper(sql, resultSet);
+                while (resultSet.next()) {
+                    entities.add(manage(extractEntityFromResultSet(resultSet, rowMapper)));
+                }
             }
+            report(startNanos, CrudOperation.FIND_ALL, sql, 1, entities.size(), null);
         } catch (SQLException e) {
             e.printStackTrace();
+            report(startNanos, CrudOperation.FIND_ALL, sql, 1, entities.size(), e);
+        }
+
+        return entities;
+    }
+
+    /**
+     * Keyset pagination: returns up to {@code limit} entities with ID greater than {@code afterId},
+     * ordered by ID. Pass the ID of the last entity of a page to get the next one, or null for the first page.
+     * Unlike OFFSET, the database seeks directly to {@code afterId}, so deep pages cost the same as the first one.
+     *
+     * @throws DataException if the query fails
+     */
+    public List<T> findPage(Long afterId, int limit) {
+        return findPage(getSQLByAnnotation(CrudOperation.FIND_PAGE, this::getFindPageSql), preparedStatement -> {
+            preparedStatement.setLong(1, afterId == null ? Long.MIN_VALUE : afterId);
+            preparedStatement.setInt(2, limit);
+        });
+    }
+
+    /**
+     * Runs the page query {@code sql} on its cached statement, reported as {@link CrudOperation#FIND_PAGE}.
+     *
+     * @throws DataException if the query fails
+     */
+    @SuppressWarnings("try")
+    List<T> findPage(String sql, StatementBinder statementBinder) {
+        long startNanos = startOperation();
+        try (ConnectionLease lease = acquireConnection()) {
+            PreparedStatement preparedStatement = getCachedStatement(sql);
+            statementBinder.bind(preparedStatement);
+            List<T> entities = extractEntitiesFromRows(sql, preparedStatement);
+            report(startNanos, CrudOperation.FIND_PAGE, sql, 1, entities.size(), null);
+            return entities;
+        } catch (SQLException e) {
+            report(startNanos, CrudOperation.FIND_PAGE, sql, 1, 0, e);
+            throw new DataException("Unable to find page", e);
         }
+    }
 
+    /**
+     * Runs the query of the prepared statement {@code sql} and maps each row to one entity.
+     */
+    List<T> extractEntitiesFromRows(String sql, PreparedStatement preparedStatement) throws SQLException {
+        List<T> entities = new ArrayList<>();
+        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+            RowMapper<T> rowMapper = getRowMapper(sql, resultSet);
+            while (resultSet.next()) {
+                entities.add(manage(rowMapper.mapRow(resultSet)));
+            }
+        }
         return entities;
     }
 
+    public Stream<T> streamAll() {
+        return streamAll(DEFAULT_FETCH_SIZE);
+    }
+
+    public Stream<T> streamAll(int fetchSize) {
+        return stream(getSQLByAnnotation(CrudOperation.STREAM_ALL, this::getStreamAllSql), fetchSize);
+    }
+
+    /**
+     * Runs the query on a forward-only cursor and maps rows lazily as the stream is consumed,
+     * one entity per row (see {@link #compileRowMapper}).
+     * <p>
+     * The returned stream holds the statement, and in data source mode a connection, until it is closed,
+     * so it must be closed, e.g. by try-with-resources.
+     * Whether the driver really fetches {@code fetchSize} rows at a time is driver specific,
+     * embedded H2 needs {@code LAZY_QUERY_EXECUTION=1} in the URL to stop buffering whole results.
+     */
+    public Stream<T> stream(String sql, int fetchSize, Object... parameters) {
+        return stream(CrudOperation.STREAM_ALL, sql, fetchSize, parameters, resultSet -> {
+            RowMapper<T> rowMapper = getRowMapper(sql, resultSet);
+            return row -> manage(rowMapper.mapRow(row));
+        });
+    }
+
+    /**
+     * Same as {@link #stream(String, int, Object...)}, mapping the rows with the given row mapper,
+     * e.g. to a projection of a few columns.
+     */
+    public <R> Stream<R> stream(String sql, RowMapper<R> rowMapper, int fetchSize, Object... parameters) {
+        return stream(CrudOperation.QUERY, sql, fetchSize, parameters, resultSet -> rowMapper);
+    }
+
+    /**
+     * Streams the rows of the {@link eu.kudljo.peopledb.annotation.Projection} SQL of the record,
+     * see {@link #query(String, Class, Object...)}. The stream must be closed.
+     */
+    public <R> Stream<R> streamAll(Class<R> projectionClass) {
+        String sql = RecordRowMapper.getProjectionSql(projectionClass);
+        return stream(CrudOperation.QUERY, sql, DEFAULT_FETCH_SIZE, new Object[0],
+                resultSet -> getProjectionMapper(sql, projectionClass, resultSet));
+    }
+
+    private <R> Stream<R> stream(CrudOperation operation, String sql, int fetchSize, Object[] parameters,
+                                 RowMapperFactory<R> rowMapperFactory) {
+        long startNanos = startOperation();
+        try {
+            ConnectionLease lease = acquireConnection();
+            PreparedStatement preparedStatement;
+            try {
+                preparedStatement = lease.connection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            } catch (SQLException | RuntimeException e) {
+                lease.close();
+                throw e;
+            }
+            try {
+                preparedStatement.setFetchSize(fetchSize);
+                for (int index = 0; index < parameters.length; index++) {
+                    preparedStatement.setObject(index + 1, parameters[index]);
+                }
+                ResultSet resultSet = preparedStatement.executeQuery();
+                ResultSetSpliterator<R> spliterator = new ResultSetSpliterator<>(resultSet, rowMapperFactory.create(resultSet));
+                return StreamSupport.stream(spliterator, false)
+                        .onClose(() -> {
+                            report(startNanos, operation, sql, 1, spliterator.rowCount, spliterator.error);
+                            closeStatement(preparedStatement, lease);
+                        });
+            } catch (SQLException | RuntimeException e) {
+                closeStatement(preparedStatement, lease);
+                throw e;
+            }
+        } catch (SQLException e) {
+            report(startNanos, operation, sql, 1, 0, e);
+            throw new DataException("Unable to stream rows", e);
+        }
+    }
+
+    private static void closeStatement(Statement statement, ConnectionLease lease) {
+        try (lease) {
+            statement.close();
+        } catch (SQLException e) {
+            throw new DataException("Unable to close statement", e);
+        }
+    }
+
+    /**
+     * Runs the query on the cached statement of {@code sql} and maps each row with the row mapper,
+     * e.g. to a record of the few columns a report needs instead of whole entities with their associations.
+     *
+     * @param parameters Values bound to the {@code ?} parameters in order
+     * @throws DataException if the query fails
+     */
+    public <R> List<R> query(String sql, RowMapper<R> rowMapper, Object... parameters) {
+        return query(sql, parameters, resultSet -> rowMapper);
+    }
+
+    /**
+     * Same as {@link #query(String, RowMapper, Object...)}, mapping each row to the record by a row mapper compiled
+     * once per query: each record component reads the column of the same name in upper snake case,
+     * e.g. {@code lastName} reads {@code LAST_NAME}.
+     *
+     * @throws IllegalArgumentException if the query has no column for a record component
+     */
+    public <R> List<R> query(String sql, Class<R> projectionClass, Object... parameters) {
+        return query(sql, parameters, resultSet -> getProjectionMapper(sql, projectionClass, resultSet));
+    }
+
+    /**
+     * @return Rows of the {@link eu.kudljo.peopledb.annotation.Projection} SQL of the record, mapped to the record
+     * @see #query(String, Class, Object...)
+     */
+    public <R> List<R> findAll(Class<R> projectionClass) {
+        return query(RecordRowMapper.getProjectionSql(projectionClass), projectionClass);
+    }
+
+    private <R> List<R> query(String sql, Object[] parameters, RowMapperFactory<R> rowMapperFactory) {
+        return queryRows(sql, preparedStatement -> {
+            for (int index = 0; index < parameters.length; index++) {
+                preparedStatement.setObject(index + 1, parameters[index]);
+            }
+        }, rowMapperFactory);
+    }
+
+    /**
+     * Runs the query on the cached statement of {@code sql}, reported as {@link CrudOperation#QUERY}.
+     *
+     * @throws DataException if the query fails
+     */
+    @SuppressWarnings("try")
+    <R> List<R> queryRows(String sql, StatementBinder statementBinder, RowMapperFactory<R> rowMapperFactory) {
+        List<R> rows = new ArrayList<>();
+        long startNanos = startOperation();
+        try (ConnectionLease lease = acquireConnection()) {
+            PreparedStatement preparedStatement = getCachedStatement(sql);
+            statementBinder.bind(preparedStatement);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                RowMapper<R> rowMapper = rowMapperFactory.create(resultSet);
+                while (resultSet.next()) {
+                    rows.add(rowMapper.mapRow(resultSet));
+                }
+            }
+            report(startNanos, CrudOperation.QUERY, sql, 1, rows.size(), null);
+        } catch (SQLException e) {
+            report(startNanos, CrudOperation.QUERY, sql, 1, rows.size(), e);
+            throw new DataException("Unable to run query", e);
+        }
+        return rows;
+    }
+
+    @SuppressWarnings("try")
     public long count() {
         long count = 0;
-        try {
-            PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.COUNT, this::getCountSql));
-            ResultSet resultSet = preparedStatement.executeQuery();
-            if (resultSet.next()) {
-                count = resultSet.getLong("COUNT");
+        long startNanos = startOperation();
+        String sql = getSQLByAnnotation(CrudOperation.COUNT, this::getCountSql);
+        try (ConnectionLease lease = acquireConnection()) {
+            PreparedStatement preparedStatement = getCachedStatement(sql);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    count = resultSet.getLong("COUNT");
+                }
             }
+            report(startNanos, CrudOperation.COUNT, sql, 1, 1, null);
         } catch (SQLException e) {
             e.printStackTrace();
+            report(startNanos, CrudOperation.COUNT, sql, 1, 0, e);
         }
 
         return count;
     }
 
-    public void delete(T entity) {
-        try {
-            PreparedStatement preparedStatement = connection.prepareStatement(getSQLByAnnotation(CrudOperation.DELETE_BY_ID, this::getDeleteSql));
+    /**
+     * @return Number of deleted rows
+     */
+    @SuppressWarnings("try")
+    public int delete(T entity) {
+        int affectedRecordCount = 0;
+        long startNanos = startOperation();
+        String sql = getSQLByAnnotation(CrudOperation.DELETE_BY_ID, this::getDeleteSql);
+        try (ConnectionLease lease = acquireConnection()) {
+            PreparedStatement preparedStatement = getCachedStatement(sql);
             preparedStatement.setLong(1, getIdByAnnotation(entity));
-            int affectedRecordCount = preparedStatement.executeUpdate();
-            System.out.println(affectedRecordCount);
+            affectedRecordCount = preparedStatement.executeUpdate();
+            report(startNanos, CrudOperation.DELETE_BY_ID, sql, 1, affectedRecordCount, null);
         } catch (SQLException e) {
             e.printStackTrace();
+            report(startNanos, CrudOperation.DELETE_BY_ID, sql, 1, 0, e);
+        } finally {
+            invalidateCachedEntity(entity);
+            evictFromSession(entity);
         }
+        return affectedRecordCount;
     }
 
-    public void delete(T... entities) {
+    /**
+     * @return Number of deleted rows
+     * @see #deleteAllById(Collection)
+     */
+    @SuppressWarnings("unchecked") // the array is only read
+    public int delete(T... entities) {
+        return deleteAll(Arrays.asList(entities));
+    }
+
+    /**
+     * @return Number of deleted rows
+     * @see #deleteAllById(Collection)
+     */
+    public int deleteAll(Collection<T> entities) {
+        List<Long> ids = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            ids.add(getIdByAnnotation(entity));
+        }
         try {
-            Statement statement = connection.createStatement();
-            String ids = Arrays.stream(entities)
-                    .map(this::getIdByAnnotation)
-                    .map(String::valueOf)
-                    .collect(joining(", "));
-            int affectedRecordCount = statement.executeUpdate(getSQLByAnnotation(CrudOperation.DELETE_BY_IDS, this::getDeleteInSql).replace(":ids", ids));
-            System.out.println(affectedRecordCount);
+            return deleteAllById(ids);
+        } finally {
+            entities.forEach(this::evictFromSession);
+        }
+    }
+
+    /**
+     * Deletes the entities of the given IDs with parameterized IN-list statements of at most
+     * {@link #MAX_IN_LIST_SIZE} IDs, reused from the statement cache, so any number of IDs can be deleted in one call.
+     * In auto-commit mode each chunk is committed on its own.
+     *
+     * @return Number of deleted rows
+     * @throws DataException if a chunk fails; rows of the previous chunks are deleted
+     */
+    @SuppressWarnings("try")
+    public int deleteAllById(Collection<Long> ids) {
+        List<Long> distinctIds = getDistinctIds(ids);
+        String sql = getSQLByAnnotation(CrudOperation.DELETE_BY_IDS, this::getDeleteInSql);
+        int affectedRecordCount = 0;
+        long startNanos = startOperation();
+        try (ConnectionLease lease = acquireConnection()) {
+            for (int fromIndex = 0; fromIndex < distinctIds.size(); fromIndex += MAX_IN_LIST_SIZE) {
+                PreparedStatement preparedStatement = prepareInListChunk(sql, distinctIds, fromIndex);
+                affectedRecordCount += preparedStatement.executeUpdate();
+            }
+            report(startNanos, CrudOperation.DELETE_BY_IDS, sql, distinctIds.size(), affectedRecordCount, null);
+        } catch (SQLException e) {
+            report(startNanos, CrudOperation.DELETE_BY_IDS, sql, distinctIds.size(), affectedRecordCount, e);
+            throw new DataException("Unable to delete %d entities, %d rows were deleted".formatted(
+                    distinctIds.size(), affectedRecordCount), e);
+        } finally {
+            EntityCache<T> entityCache = this.entityCache;
+            if (entityCache != null) {
+                distinctIds.forEach(entityCache::invalidate);
+            }
+        }
+        return affectedRecordCount;
+    }
+
+    @SuppressWarnings("try")
+    public void update(T entity) {
+        String sql = getUpdateSql(entity);
+        if (sql == null) {
+            invalidateCachedEntity(entity);
+            return;
+        }
+        long startNanos = startOperation();
+        try (ConnectionLease lease = acquireConnection()) {
+            PreparedStatement preparedStatement = getCachedStatement(sql);
+            mapForUpdate(entity, preparedStatement);
+            int affectedRecordCount = preparedStatement.executeUpdate();
+            postUpdate(entity);
+            report(startNanos, CrudOperation.UPDATE, sql, 1, affectedRecordCount, null);
         } catch (SQLException e) {
             e.printStackTrace();
+            report(startNanos, CrudOperation.UPDATE, sql, 1, 0, e);
+        } finally {
+            invalidateCachedEntity(entity);
         }
+    }
 
+    public long updateAll(Collection<T> entities) {
+        return updateAll(entities, DEFAULT_BATCH_SIZE);
     }
 
-    public void update(T entity) {
+    /**
+     * Updates entities in JDBC batches of {@code batchSize} rows. Entities are grouped by their update SQL
+     * (see {@link #getUpdateSql(Object)}), so entities with the same changes share one statement and its batches.
+     *
+     * @return Number of updated rows
+     * @throws DataException if any batch fails; entities of previous batches are updated
+     */
+    @SuppressWarnings("try")
+    public long updateAll(Collection<T> entities, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        Map<String, List<T>> entitiesBySql = new LinkedHashMap<>();
+        for (T entity : entities) {
+            String sql = getUpdateSql(entity);
+            if (sql != null) {
+                entitiesBySql.computeIfAbsent(sql, key -> new ArrayList<>()).add(entity);
+            }
+        }
+
+        long updatedCount = 0;
+        try (ConnectionLease lease = acquireConnection()) {
+            for (Map.Entry<String, List<T>> sqlEntities : entitiesBySql.entrySet()) {
+                List<T> sqlEntityList = sqlEntities.getValue();
+                for (int fromIndex = 0; fromIndex < sqlEntityList.size(); fromIndex += batchSize) {
+                    List<T> batch = sqlEntityList.subList(fromIndex, Math.min(fromIndex + batchSize, sqlEntityList.size()));
+                    updatedCount += updateBatch(sqlEntities.getKey(), batch);
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataException("Unable to acquire connection", e);
+        }
+        return updatedCount;
+    }
+
+    private long updateBatch(String sql, List<T> batch) {
+        long startNanos = startOperation();
+        PreparedStatement preparedStatement = null;
         try {
-            PreparedStatement preparedStatement = connection.prepareStatement(
-                    getSQLByAnnotation(CrudOperation.UPDATE, this::GetUpdateSql)
-            );
-            mapForUpdate(entity, preparedStatement);
-            preparedStatement.executeUpdate();
+            preparedStatement = getCachedStatement(sql);
+            for (T entity : batch) {
+                mapForUpdate(entity, preparedStatement);
+                preparedStatement.addBatch();
+            }
+            long updatedCount = 0;
+            for (int affectedRecordCount : preparedStatement.executeBatch()) {
+                // drivers may only report that a statement of the batch succeeded
+                updatedCount += affectedRecordCount == Statement.SUCCESS_NO_INFO ? 1 : affectedRecordCount;
+            }
+            batch.forEach(this::postUpdate);
+            report(startNanos, CrudOperation.UPDATE, sql, batch.size(), updatedCount, null);
+            return updatedCount;
         } catch (SQLException e) {
+            clearBatch(preparedStatement);
+            report(startNanos, CrudOperation.UPDATE, sql, batch.size(), 0, e);
+            throw new DataException("Unable to update batch of %d entities".formatted(batch.size()), e);
+        } finally {
+            batch.forEach(this::invalidateCachedEntity);
+        }
+    }
+
+    /**
+     * Runs the work in one transaction: all operations of the current thread inside it share one connection,
+     * which is committed when the work returns and rolled back when it throws.
+     * Within another transaction of the same connection, the work joins it.
+     *
+     * @throws DataException if the transaction cannot be committed or rolled back
+     */
+    public <R> R inTransaction(Supplier<R> work) {
+        try (ConnectionLease lease = acquireConnection()) {
+            Connection connection = lease.connection();
+            boolean autoCommit = connection.getAutoCommit();
+            if (!autoCommit && transactionDepth.get() > 0) {
+                return work.get();
+            }
+            connection.setAutoCommit(false);
+            transactionDepth.set(transactionDepth.get() + 1);
+            try {
+                R result = work.get();
+                connection.commit();
+                return result;
+            } catch (RuntimeException e) {
+                rollback(connection, e);
+                throw e;
+            } finally {
+                transactionDepth.set(transactionDepth.get() - 1);
+                // after commit or rollback, so restoring auto-commit has nothing left to commit
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new DataException("Unable to run transaction", e);
+        }
+    }
+
+    private static void rollback(Connection connection, RuntimeException cause) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Caches entities found by {@link #findById}, so repeated lookups of the same ID skip the database.
+     * An entity is dropped from the cache when it is updated or deleted through this repository,
+     * when it expires, or when the cache is full and it is the least recently used one.
+     * <p>
+     * Cached entities are shared between callers and should not be modified without calling {@link #update}.
+     * Changes made to the graph of a cached entity by another entity, e.g. deleting a child of a cached parent,
+     * are only visible after it expires.
+     */
+    public void enableEntityCache(int maximumSize, Duration timeToLive) {
+        entityCache = new EntityCache<>(maximumSize, timeToLive.toNanos());
+    }
+
+    public void disableEntityCache() {
+        entityCache = null;
+    }
+
+    public void clearEntityCache() {
+        EntityCache<T> entityCache = this.entityCache;
+        if (entityCache != null) {
+            entityCache.invalidateAll();
+        }
+    }
+
+    /**
+     * @return Statistics of the entity cache, all zero if it is disabled
+     */
+    public CacheStats getEntityCacheStats() {
+        EntityCache<T> entityCache = this.entityCache;
+        return entityCache == null ? new CacheStats(0, 0, 0, 0) : entityCache.getStats();
+    }
+
+    /**
+     * Reports each operation that runs SQL to the listener, e.g. an {@link InMemoryRepositoryMetrics}.
+     * Batched operations report each batch, lookups served by the entity cache are not reported.
+     * Without a listener, operations are not timed at all.
+     *
+     * @param repositoryListener Listener, or null to stop reporting
+     */
+    public void setRepositoryListener(RepositoryListener repositoryListener) {
+        this.repositoryListener = repositoryListener;
+    }
+
+    public RepositoryListener getRepositoryListener() {
+        return repositoryListener;
+    }
+
+    /**
+     * @return Start time of an operation for {@link #report}, or 0 if there is no listener to report it to
+     */
+    private long startOperation() {
+        return repositoryListener == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Reports the operation started at {@code startNanos}, unless there was no listener when it started.
+     * Failures of the listener are printed and do not fail the operation.
+     *
+     * @param executionCount Executions of {@code sql}, i.e. entities of a batch or IDs of an IN list
+     */
+    private void report(long startNanos, CrudOperation operation, String sql, int executionCount, long rowCount, Exception error) {
+        RepositoryListener repositoryListener = this.repositoryListener;
+        if (startNanos == 0 || repositoryListener == null) {
+            return;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        try {
+            repositoryListener.onOperation(new RepositoryEvent(getClass(), operation, sql,
+                    getBindCount(sql, executionCount), rowCount, elapsedNanos, error));
+        } catch (RuntimeException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * @return Parameters bound by the executions, an {@code (:ids)} IN list is executed once per chunk of IDs
+     * with the chunk padded to its {@link #getInListSize IN list size}
+     */
+    private int getBindCount(String sql, int executionCount) {
+        int parameterCount = getParameterCount(sql);
+        if (!sql.contains(IN_LIST_PLACEHOLDER)) {
+            return parameterCount * executionCount;
+        }
+        int bindCount = 0;
+        for (int idCount = executionCount; idCount > 0; idCount -= MAX_IN_LIST_SIZE) {
+            bindCount += parameterCount + getInListSize(Math.min(idCount, MAX_IN_LIST_SIZE));
+        }
+        return bindCount;
+    }
+
+    private int getParameterCount(String sql) {
+        Integer parameterCount = parameterCounts.get(sql);
+        if (parameterCount == null) {
+            parameterCount = countParameters(sql);
+            if (parameterCounts.size() < MAX_CACHED_ROW_MAPPERS) {
+                parameterCounts.put(sql, parameterCount);
+            }
+        }
+        return parameterCount;
+    }
+
+    /**
+     * @return Number of {@code ?} parameters outside of string literals, without an {@code (:ids)} IN list,
+     * whose size depends on the bound IDs
+     */
+    static int countParameters(String sql) {
+        int parameterCount = 0;
+        boolean inLiteral = false;
+        for (int index = 0; index < sql.length(); index++) {
+            char character = sql.charAt(index);
+            if (character == '\'') {
+                inLiteral = !inLiteral;
+            } else if (character == '?' && !inLiteral) {
+                parameterCount++;
+            }
+        }
+        return parameterCount;
+    }
+
+    /**
+     * @return Instance of the same entity already in the current {@link Session}, otherwise the given entity,
+     * which is added to the session
+     */
+    T manage(T entity) {
+        Session session = Session.current();
+        if (session == null || entity == null) {
+            return entity;
+        }
+        Long id = getIdByAnnotation(entity);
+        @SuppressWarnings("unchecked")
+        T managedEntity = (T) session.find(Session.getEntityClass(entity), id);
+        if (managedEntity != null) {
+            return managedEntity;
+        }
+        session.register(entity, id);
+        return entity;
+    }
+
+    private void evictFromSession(T entity) {
+        Session session = Session.current();
+        if (session != null) {
+            session.evict(entity, getIdByAnnotation(entity));
+        }
+    }
+
+    private void invalidateCachedEntity(T entity) {
+        EntityCache<T> entityCache = this.entityCache;
+        if (entityCache != null) {
+            Long id = getIdByAnnotation(entity);
+            if (id != null) {
+                entityCache.invalidate(id);
+            }
+        }
+    }
+
+    /**
+     * Statements get the connection from the connection provider, so callers often don't reference the lease
+     * in the try block that closes it, and suppress the {@code try} lint warning.
+     *
+     * @return Lease of the connection for one repository operation, to be closed when the operation completes
+     */
+    ConnectionLease acquireConnection() throws SQLException {
+        return connectionProvider.acquire();
+    }
+
+    ConnectionProvider getConnectionProvider() {
+        return connectionProvider;
+    }
+
+    /**
+     * @return Prepared statement from the statement cache of the connection leased by the current thread.
+     * It stays open for later calls and must not be closed by the caller, only its result sets.
+     */
+    PreparedStatement getCachedStatement(String sql) throws SQLException {
+        return getStatementCache().prepare(sql);
+    }
+
+    /**
+     * @return Row mapper compiled for the columns of the query {@code sql}, cached by the SQL text.
+     * Mappers of ad-hoc queries are not cached once there are too many of them.
+     */
+    RowMapper<T> getRowMapper(String sql, ResultSet resultSet) throws SQLException {
+        RowMapper<T> rowMapper = rowMappers.get(sql);
+        if (rowMapper == null) {
+            rowMapper = compileRowMapper(resultSet.getMetaData());
+            if (rowMappers.size() < MAX_CACHED_ROW_MAPPERS) {
+                rowMappers.putIfAbsent(sql, rowMapper);
+            }
+        }
+        return rowMapper;
+    }
+
+    /**
+     * @return Record row mapper of the query {@code sql}, cached by the SQL text and record class
+     */
+    @SuppressWarnings("unchecked")
+    private <R> RowMapper<R> getProjectionMapper(String sql, Class<R> projectionClass, ResultSet resultSet) throws SQLException {
+        ProjectionKey key = new ProjectionKey(sql, projectionClass);
+        RowMapper<R> rowMapper = (RowMapper<R>) projectionMappers.get(key);
+        if (rowMapper == null) {
+            rowMapper = new RecordRowMapper<>(projectionClass, resultSet.getMetaData());
+            if (projectionMappers.size() < MAX_CACHED_ROW_MAPPERS) {
+                projectionMappers.putIfAbsent(key, rowMapper);
+            }
+        }
+        return rowMapper;
+    }
+
+    /**
+     * Runs a query with an {@code (:ids)} IN list for the given IDs, in chunks of at most {@link #MAX_IN_LIST_SIZE} IDs,
+     * on the connection leased by the current thread, and passes each row to the handler.
+     * <p>
+     * Chunks are padded to a few fixed sizes by repeating their last ID, so only a handful of distinct
+     * statements are prepared and cached per query whatever the number of IDs.
+     */
+    void queryInChunks(String sql, Collection<Long> ids, RowHandler<T> rowHandler) throws SQLException {
+        List<Long> distinctIds = getDistinctIds(ids);
+        for (int fromIndex = 0; fromIndex < distinctIds.size(); fromIndex += MAX_IN_LIST_SIZE) {
+            PreparedStatement preparedStatement = prepareInListChunk(sql, distinctIds, fromIndex);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                RowMapper<T> rowMapper = getRowMapper(sql, resultSet);
+                while (resultSet.next()) {
+                    rowHandler.handleRow(resultSet, rowMapper);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs {@link #queryInChunks(String, Collection, RowHandler)} on a leased connection, reported as {@code operation}.
+     *
+     * @throws DataException if the query fails
+     */
+    @SuppressWarnings("try")
+    void queryInChunks(CrudOperation operation, String sql, Collection<Long> ids, RowHandler<T> rowHandler) {
+        long startNanos = startOperation();
+        int idCount = getDistinctIds(ids).size();
+        long[] rowCount = {0};
+        try (ConnectionLease lease = acquireConnection()) {
+            queryInChunks(sql, ids, (resultSet, rowMapper) -> {
+                rowCount[0]++;
+                rowHandler.handleRow(resultSet, rowMapper);
+            });
+            report(startNanos, operation, sql, idCount, rowCount[0], null);
+        } catch (SQLException e) {
+            report(startNanos, operation, sql, idCount, rowCount[0], e);
+            throw new DataException("Unable to run query", e);
+        }
+    }
+
+    private static List<Long> getDistinctIds(Collection<Long> ids) {
+        return ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * @return Cached statement of {@code sql} with the chunk of IDs starting at {@code fromIndex} bound to its IN list
+     */
+    private PreparedStatement prepareInListChunk(String sql, List<Long> ids, int fromIndex) throws SQLException {
+        List<Long> chunk = ids.subList(fromIndex, Math.min(fromIndex + MAX_IN_LIST_SIZE, ids.size()));
+        int parameterCount = getInListSize(chunk.size());
+        PreparedStatement preparedStatement = getCachedStatement(expandInList(sql, parameterCount));
+        bindInList(preparedStatement, 1, chunk, parameterCount);
+        return preparedStatement;
+    }
+
+    /**
+     * @return Smallest power of two that fits {@code idCount} IDs, at most {@link #MAX_IN_LIST_SIZE}
+     */
+    static int getInListSize(int idCount) {
+        if (idCount <= 1) {
+            return 1;
+        }
+        return Math.min(Integer.highestOneBit(idCount - 1) << 1, MAX_IN_LIST_SIZE);
+    }
+
+    /**
+     * @return SQL with its {@code (:ids)} named parameter replaced by {@code parameterCount} parameters
+     */
+    static String expandInList(String sql, int parameterCount) {
+        if (!sql.contains(IN_LIST_PLACEHOLDER)) {
+            throw new IllegalArgumentException("SQL has no %s parameter: %s".formatted(IN_LIST_PLACEHOLDER, sql));
+        }
+        return sql.replace(IN_LIST_PLACEHOLDER, "(" + "?, ".repeat(parameterCount - 1) + "?)");
+    }
+
+    /**
+     * Binds the IDs from {@code startIndex}, repeating the last one up to {@code parameterCount} parameters.
+     */
+    static void bindInList(PreparedStatement preparedStatement, int startIndex, List<Long> ids, int parameterCount) throws SQLException {
+        for (int index = 0; index < parameterCount; index++) {
+            preparedStatement.setLong(startIndex + index, ids.get(Math.min(index, ids.size() - 1)));
+        }
+    }
+
+    private String getWriteSql(CrudOperation operation) {
+        return operation == CrudOperation.UPSERT
+                ? getSQLByAnnotation(CrudOperation.UPSERT, this::getUpsertSql)
+                : getSQLByAnnotation(CrudOperation.SAVE, this::getSaveSql);
+    }
+
+    private PreparedStatement getSaveStatement() throws SQLException {
+        return getStatementCache().prepareReturningGeneratedKeys(getSQLByAnnotation(CrudOperation.SAVE, this::getSaveSql));
+    }
+
+    private PreparedStatement getUpsertStatement() throws SQLException {
+        return getStatementCache().prepareReturningColumns(getSQLByAnnotation(CrudOperation.UPSERT, this::getUpsertSql), getIdColumnName());
+    }
+
+    private StatementCache getStatementCache() {
+        Connection connection = connectionProvider.currentLease().physicalConnection();
+        StatementCache statementCache = statementCaches.get(connection);
+        if (statementCache == null) {
+            // connections closed by a pool leave their caches behind, drop them before adding a new one
+            statementCaches.values().removeIf(cache -> isClosed(cache.getConnection()));
+            statementCache = statementCaches.computeIfAbsent(connection, key -> new StatementCache(
+                    key, getStatementCacheCapacity(), statementCacheHitCount, statementCacheMissCount));
+        }
+        return statementCache;
+    }
+
+    /**
+     * @return Statements cached per connection, enough for all statements the repository prepares itself,
+     * so that they are only evicted by ad-hoc queries of callers
+     */
+    int getStatementCacheCapacity() {
+        // the find and delete by IDs queries are prepared once per IN list size
+        return StatementCache.DEFAULT_CAPACITY + 2 * IN_LIST_SIZE_COUNT;
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    public long getStatementCacheHitCount() {
+        return statementCacheHitCount.sum();
+    }
+
+    public long getStatementCacheMissCount() {
+        return statementCacheMissCount.sum();
+    }
+
+    /**
+     * Closes the cached prepared statements. Connections stay open, they are owned by the caller or the data source.
+     */
+    @Override
+    public void close() {
+        DataException exception = null;
+        for (StatementCache statementCache : statementCaches.values()) {
+            try {
+                statementCache.close();
+            } catch (SQLException e) {
+                if (exception == null) {
+                    exception = new DataException("Unable to close prepared statements", e);
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        statementCaches.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
     protected String GetUpdateSql() {
         throw new RuntimeException("SQL not defined");
     }
@@ -164,6 +1274,46 @@ abstract class CRUDRepository<T> {
         throw new RuntimeException("SQL not defined");
     }
 
+    /**
+     * @return SQL String selecting all entities, without row limit, for {@link #streamAll()}
+     */
+    protected String getStreamAllSql() {
+        throw new RuntimeException("SQL not defined");
+    }
+
+    /**
+     * @return SQL String with two parameters, the ID after which the page starts and the page size, like:
+     * "SELECT ... FROM PEOPLE WHERE ID > ? ORDER BY ID FETCH FIRST ? ROWS ONLY"
+     */
+    protected String getFindPageSql() {
+        throw new RuntimeException("SQL not defined");
+    }
+
+    /**
+     * @return SQL String selecting one entity per row for the given IDs, like:
+     * "SELECT ... FROM PEOPLE WHERE ID IN (:ids)"
+     * Be sure to include the '(:ids)' named parameter & call it 'ids'
+     */
+    protected String getFindByIdsSql() {
+        throw new RuntimeException("SQL not defined");
+    }
+
+    /**
+     * @return SQL String inserting an entity or updating the row with the same key, with the parameters
+     * of {@link #mapForUpsert}, like:
+     * "MERGE INTO PEOPLE (FIRST_NAME, LAST_NAME, EMAIL) KEY (EMAIL) VALUES (?, ?, ?)"
+     */
+    protected String getUpsertSql() {
+        throw new RuntimeException("SQL not defined");
+    }
+
+    /**
+     * @return Name of the ID column, returned by the upsert statement for inserted and updated rows
+     */
+    protected String getIdColumnName() {
+        return "ID";
+    }
+
     protected String getSaveSql() {
         throw new RuntimeException("SQL not defined");
     }
@@ -177,58 +1327,154 @@ abstract class CRUDRepository<T> {
         throw new RuntimeException("SQL not defined");
     }
 
+    /**
+     * Called before the entity is bound to the save statement. Use it to save entities
+     * the saved entity refers to, so their IDs are known when the statement is bound.
+     */
+    protected void preSave(T entity) { }
+
     protected void postSave(T entity, long id) { }
 
+    /**
+     * Called before the batch is bound to the upsert statement, by default {@link #preSave} for each entity.
+     * Override it to upsert the entities the batch refers to, so upserting it again writes no new rows.
+     */
+    protected void preUpsert(List<T> batch) {
+        batch.forEach(this::preSave);
+    }
+
+    /**
+     * Called after the entity was upserted, by default {@link #postSave}.
+     */
+    protected void postUpsert(T entity, long id) {
+        postSave(entity, id);
+    }
+
+    /**
+     * Called after the entity was updated.
+     */
+    protected void postUpdate(T entity) { }
+
+    /**
+     * @return SQL updating the entity, bound by {@link #mapForUpdate}, or null if the entity has nothing to update.
+     * By default the SQL of {@link CrudOperation#UPDATE}
+     */
+    String getUpdateSql(T entity) {
+        return getSQLByAnnotation(CrudOperation.UPDATE, this::GetUpdateSql);
+    }
+
     abstract void mapForSave(T entity, PreparedStatement preparedStatement) throws SQLException;
 
     abstract void mapForUpdate(T entity, PreparedStatement preparedStatement) throws SQLException;
 
+    /**
+     * Binds the entity to the upsert statement, by default like {@link #mapForSave}.
+     */
+    void mapForUpsert(T entity, PreparedStatement preparedStatement) throws SQLException {
+        mapForSave(entity, preparedStatement);
+    }
+
     abstract T extractEntityFromResultSet(ResultSet resultSet) throws SQLException;
 
-    private String getSQLByAnnotation(CrudOperation operationType, Supplier<String> sqlGetter) {
-        Stream<SQL> multiSqlStream = Arrays.stream(this.getClass().getDeclaredMethods())
-                .filter(method -> method.isAnnotationPresent(MultiSQL.class))
-                .map(method -> method.getAnnotation(MultiSQL.class))
-                .flatMap(multiSQL -> Arrays.stream(multiSQL.value()));
+    /**
+     * Same as {@link #extractEntityFromResultSet(ResultSet)}, given the row mapper compiled for the query.
+     * Override it to read the rows through the compiled mapper instead of by column name.
+     */
+    T extractEntityFromResultSet(ResultSet resultSet, RowMapper<T> rowMapper) throws SQLException {
+        return extractEntityFromResultSet(resultSet);
+    }
 
-        Stream<SQL> sqlStream = Arrays.stream(this.getClass().getDeclaredMethods())
-                .filter(method -> method.isAnnotationPresent(SQL.class))
-                .map(method -> method.getAnnotation(SQL.class));
+    /**
+     * Maps the current row of a forward-only result set. Unlike {@link #extractEntityFromResultSet}
+     * it must not move the cursor, so one row has to hold one whole entity.
+     */
+    T extractEntityFromRow(ResultSet resultSet) throws SQLException {
+        return extractEntityFromResultSet(resultSet);
+    }
+
+    /**
+     * Called once per query shape to create the mapper of its rows, see {@link #getRowMapper}.
+     * Override it to resolve the columns from the metadata up front instead of on every row.
+     *
+     * @return By default {@link #extractEntityFromRow}
+     */
+    RowMapper<T> compileRowMapper(ResultSetMetaData metaData) throws SQLException {
+        return this::extractEntityFromRow;
+    }
 
-        return Stream.concat(multiSqlStream, sqlStream)
-                .filter(annotation -> annotation.operationType().equals(operationType))
-                .map(SQL::value)
-                .findFirst()
-                .orElseGet(sqlGetter);
+    private String getSQLByAnnotation(CrudOperation operationType, Supplier<String> sqlGetter) {
+        return RepositoryMetadata.of(this.getClass()).getSql(operationType, sqlGetter);
     }
 
     private void setIdByAnnotation(Long id, T entity) {
-        Arrays.stream(entity.getClass().getDeclaredFields())
-                .filter(field -> field.isAnnotationPresent(Id.class))
-                .forEach(field -> {
-                    field.setAccessible(true);
-                    try {
-                        field.set(entity, id);
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException("Unable to set value to field 'Id'");
-                    }
-                });
+        IdAccessor.of(entity.getClass()).setId(entity, id);
     }
 
     private Long getIdByAnnotation(T entity) {
-        return Arrays.stream(entity.getClass().getDeclaredFields())
-                .filter(field -> field.isAnnotationPresent(Id.class))
-                .mapToLong(field -> {
-                    field.setAccessible(true);
-                    Long id = null;
-                    try {
-                        id = (long) field.get(entity);
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    }
-                    return id;
-                })
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("Field with annotation 'Id' was not found"));
+        return IdAccessor.of(entity.getClass()).getId(entity);
+    }
+
+    /**
+     * Loads an entity by ID, on the connection leased by the current thread.
+     */
+    @FunctionalInterface
+    interface EntityLoader<T> {
+        T load(Long id) throws SQLException;
+    }
+
+    /**
+     * Handles the current row of a result set, given the row mapper compiled for its query.
+     */
+    @FunctionalInterface
+    interface RowHandler<T> {
+        void handleRow(ResultSet resultSet, RowMapper<T> rowMapper) throws SQLException;
+    }
+
+    /**
+     * Creates the row mapper of a query once it is executed, from the metadata of its result set.
+     */
+    @FunctionalInterface
+    interface RowMapperFactory<R> {
+        RowMapper<R> create(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * Binds the parameters of a query to its cached statement.
+     */
+    @FunctionalInterface
+    interface StatementBinder {
+        void bind(PreparedStatement preparedStatement) throws SQLException;
+    }
+
+    private record ProjectionKey(String sql, Class<?> projectionClass) {
+    }
+
+    private static final class ResultSetSpliterator<R> extends Spliterators.AbstractSpliterator<R> {
+        private final ResultSet resultSet;
+        private final RowMapper<R> rowMapper;
+        private long rowCount;
+        private SQLException error;
+
+        ResultSetSpliterator(ResultSet resultSet, RowMapper<R> rowMapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.resultSet = resultSet;
+            this.rowMapper = rowMapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            try {
+                if (!resultSet.next()) {
+                    return false;
+                }
+                R row = rowMapper.mapRow(resultSet);
+                rowCount++;
+                action.accept(row);
+                return true;
+            } catch (SQLException e) {
+                error = e;
+                throw new DataException("Unable to read next row", e);
+            }
+        }
     }
 }
@@ -0,0 +1,9 @@
+package eu.kudljo.peopledb.repository;
+
+public record CacheStats(long hitCount, long missCount, long evictionCount, int size) {
+
+    public double hitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+    }
+}
@@ -0,0 +1,82 @@
+package eu.kudljo.peopledb.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Condition of a {@link PersonField} for {@link PersonCriteria}, created by the field, e.g.
+ * {@code PersonField.LAST_NAME.eq("Smith")}. Its values are bound as parameters, only the field, the operator
+ * and the padded size of an IN list end up in the SQL.
+ */
+public final class Condition {
+    private final PersonField<?> field;
+    private final Operator operator;
+    private final List<Object> values;
+
+    Condition(PersonField<?> field, Operator operator, List<Object> values) {
+        this.field = field;
+        this.operator = operator;
+        this.values = values;
+    }
+
+    PersonField<?> getField() {
+        return field;
+    }
+
+    Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return Parameters of the condition in the SQL, IN lists are padded to the sizes of {@link CRUDRepository#getInListSize}
+     */
+    int getParameterCount() {
+        return operator == Operator.IN ? CRUDRepository.getInListSize(values.size()) : values.size();
+    }
+
+    /**
+     * @return SQL of the condition with {@code parameterCount} parameters
+     */
+    static String toSql(PersonField<?> field, Operator operator, int parameterCount) {
+        return switch (operator) {
+            case IN -> field.getColumn() + " IN (" + "?, ".repeat(parameterCount - 1) + "?)";
+            case BETWEEN -> field.getColumn() + " BETWEEN ? AND ?";
+            case IS_NULL -> field.getColumn() + " IS NULL";
+            case IS_NOT_NULL -> field.getColumn() + " IS NOT NULL";
+            default -> field.getColumn() + " " + operator.symbol + " ?";
+        };
+    }
+
+    /**
+     * Binds the values starting at {@code parameterIndex}, the padding of an IN list repeats its last value.
+     *
+     * @return Index of the next parameter
+     */
+    int bind(PreparedStatement preparedStatement, int parameterIndex) throws SQLException {
+        if (operator == Operator.LIKE) {
+            preparedStatement.setString(parameterIndex, (String) values.get(0));
+            return parameterIndex + 1;
+        }
+        int parameterCount = getParameterCount();
+        for (int index = 0; index < parameterCount; index++) {
+            field.bind(preparedStatement, parameterIndex + index, values.get(Math.min(index, values.size() - 1)));
+        }
+        return parameterIndex + parameterCount;
+    }
+
+    @Override
+    public String toString() {
+        return toSql(field, operator, getParameterCount()) + " " + values;
+    }
+
+    enum Operator {
+        EQ("="), NE("<>"), LT("<"), LE("<="), GT(">"), GE(">="), LIKE("LIKE"), BETWEEN(null), IN(null), IS_NULL(null), IS_NOT_NULL(null);
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+}
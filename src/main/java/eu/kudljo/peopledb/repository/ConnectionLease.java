@@ -0,0 +1,67 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.exception.DataException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Reference counted use of a connection. The connection is released when the outermost lease is closed.
+ */
+final class ConnectionLease implements AutoCloseable {
+    private final Connection connection;
+    private final Connection physicalConnection;
+    private final Releaser releaser;
+    private int holdCount = 1;
+
+    ConnectionLease(Connection connection, Releaser releaser) {
+        this(connection, unwrap(connection), releaser);
+    }
+
+    ConnectionLease(Connection connection, Connection physicalConnection, Releaser releaser) {
+        this.connection = connection;
+        this.physicalConnection = physicalConnection;
+        this.releaser = releaser;
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    /**
+     * @return Connection behind a pool's wrapper. Unlike the wrapper it stays the same across leases,
+     * so statements prepared on it can be reused by later leases of the same connection.
+     */
+    Connection physicalConnection() {
+        return physicalConnection;
+    }
+
+    static Connection unwrap(Connection connection) {
+        try {
+            return connection.isWrapperFor(Connection.class) ? connection.unwrap(Connection.class) : connection;
+        } catch (SQLException e) {
+            return connection;
+        }
+    }
+
+    void retain() {
+        holdCount++;
+    }
+
+    @Override
+    public void close() {
+        if (releaser == null || --holdCount > 0) {
+            return;
+        }
+        try {
+            releaser.release(this);
+        } catch (SQLException e) {
+            throw new DataException("Unable to release connection", e);
+        }
+    }
+
+    @FunctionalInterface
+    interface Releaser {
+        void release(ConnectionLease lease) throws SQLException;
+    }
+}
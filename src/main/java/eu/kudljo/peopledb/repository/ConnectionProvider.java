@@ -0,0 +1,133 @@
+package eu.kudljo.peopledb.repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Supplies connections to repositories. An acquired connection is bound to the acquiring thread until
+ * its lease is closed, so nested repository calls (e.g. saving a person's addresses) join the same connection.
+ */
+interface ConnectionProvider {
+
+    ConnectionLease acquire() throws SQLException;
+
+    /**
+     * @return Lease held by the current thread
+     * @throws IllegalStateException if the current thread holds no lease
+     */
+    ConnectionLease currentLease();
+
+    static ConnectionProvider of(Connection connection) {
+        return new SingleConnectionProvider(connection);
+    }
+
+    static ConnectionProvider of(DataSource dataSource) {
+        return new DataSourceConnectionProvider(dataSource);
+    }
+
+    /**
+     * All repository calls share the one connection given by the caller, which also owns it.
+     * The connection and its statements can't be used by two threads at once, so leases are exclusive:
+     * other threads wait until the current operation completes.
+     * <p>
+     * A stream keeps its lease until it is closed, so streams must be closed, or other threads wait forever.
+     * The lease is not tied to the thread that took it: a stream can be closed by another thread.
+     */
+    final class SingleConnectionProvider implements ConnectionProvider {
+        // not synchronized, which would pin virtual threads to their carrier while they wait for the database
+        private final ReentrantLock lock = new ReentrantLock();
+        // fully qualified, the repository package has a Condition of its own
+        private final java.util.concurrent.locks.Condition released = lock.newCondition();
+        private final ConnectionLease lease;
+        private Thread owner;
+        private int holdCount;
+
+        private SingleConnectionProvider(Connection connection) {
+            this.lease = new ConnectionLease(connection, null);
+        }
+
+        @Override
+        public ConnectionLease acquire() {
+            Thread currentThread = Thread.currentThread();
+            lock.lock();
+            try {
+                while (owner != null && owner != currentThread) {
+                    released.awaitUninterruptibly();
+                }
+                owner = currentThread;
+                holdCount++;
+            } finally {
+                lock.unlock();
+            }
+            return new ConnectionLease(lease.connection(), lease.physicalConnection(), lease -> release());
+        }
+
+        @Override
+        public ConnectionLease currentLease() {
+            lock.lock();
+            try {
+                if (owner != Thread.currentThread()) {
+                    throw new IllegalStateException("No connection is leased by the current thread");
+                }
+                return lease;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release() {
+            lock.lock();
+            try {
+                if (--holdCount == 0) {
+                    owner = null;
+                    released.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Borrows a connection from the data source for the outermost repository call of a thread
+     * and returns it when that call completes.
+     */
+    final class DataSourceConnectionProvider implements ConnectionProvider {
+        private final DataSource dataSource;
+        private final ThreadLocal<ConnectionLease> currentLease = new ThreadLocal<>();
+
+        private DataSourceConnectionProvider(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public ConnectionLease acquire() throws SQLException {
+            ConnectionLease lease = currentLease.get();
+            if (lease != null) {
+                lease.retain();
+                return lease;
+            }
+            lease = new ConnectionLease(dataSource.getConnection(), this::release);
+            currentLease.set(lease);
+            return lease;
+        }
+
+        @Override
+        public ConnectionLease currentLease() {
+            ConnectionLease lease = currentLease.get();
+            if (lease == null) {
+                throw new IllegalStateException("No connection is leased by the current thread");
+            }
+            return lease;
+        }
+
+        private void release(ConnectionLease lease) throws SQLException {
+            if (currentLease.get() == lease) {
+                currentLease.remove();
+            }
+            lease.connection().close();
+        }
+    }
+}
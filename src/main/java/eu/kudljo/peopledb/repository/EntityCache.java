@@ -0,0 +1,131 @@
+package eu.kudljo.peopledb.repository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Entities by ID, bounded by size with least recently used eviction and by time to live.
+ * Cached instances are shared by all callers.
+ * <p>
+ * An entity loaded from the database is only put if its ID was not invalidated since the load started:
+ * otherwise a load that read the row before a concurrent update or delete would cache the stale state.
+ * Loaders take the {@link #getGeneration generation} of the ID before the load and pass it to {@link #put}.
+ */
+final class EntityCache<T> {
+    // generations are kept per stripe of IDs, so the cache does not track every ID it ever saw
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, Entry<T>> entries;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final long[] generations = new long[GENERATION_STRIPES];
+
+    EntityCache(int maximumSize, long timeToLiveNanos) {
+        if (maximumSize < 1 || timeToLiveNanos <= 0) {
+            throw new IllegalArgumentException("Maximum size and time to live must be greater than 0");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLiveNanos;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry<T>> eldest) {
+                if (size() <= EntityCache.this.maximumSize) {
+                    return false;
+                }
+                evictionCount.increment();
+                return true;
+            }
+        };
+    }
+
+    T get(Long id) {
+        lock.lock();
+        try {
+            Entry<T> entry = entries.get(id);
+            if (entry != null && entry.expiresAtNanos() - System.nanoTime() <= 0) {
+                entries.remove(id);
+                evictionCount.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                missCount.increment();
+                return null;
+            }
+            hitCount.increment();
+            return entry.entity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Generation of the ID, which changes whenever the ID, or another of its stripe, is invalidated
+     */
+    long getGeneration(Long id) {
+        lock.lock();
+        try {
+            return generations[getStripe(id)];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts the entity loaded after {@link #getGeneration} returned {@code generation},
+     * unless the ID was invalidated since.
+     */
+    void put(Long id, T entity, long generation) {
+        lock.lock();
+        try {
+            if (generations[getStripe(id)] == generation) {
+                entries.put(id, new Entry<>(entity, System.nanoTime() + timeToLiveNanos));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void invalidate(Long id) {
+        lock.lock();
+        try {
+            entries.remove(id);
+            generations[getStripe(id)]++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+            for (int stripe = 0; stripe < GENERATION_STRIPES; stripe++) {
+                generations[stripe]++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    CacheStats getStats() {
+        lock.lock();
+        try {
+            return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), entries.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int getStripe(Long id) {
+        return Long.hashCode(id) & (GENERATION_STRIPES - 1);
+    }
+
+    private record Entry<T>(T entity, long expiresAtNanos) {
+    }
+}
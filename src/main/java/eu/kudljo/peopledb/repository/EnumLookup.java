@@ -0,0 +1,40 @@
+package eu.kudljo.peopledb.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Constants of an enum by their name as the repositories store it, or in lower case, so mapping a row
+ * is a map lookup instead of upper-casing the name for {@link Enum#valueOf}.
+ * Shared by the hand-written and the generated row mappers.
+ */
+final class EnumLookup<E extends Enum<E>> {
+    private final Class<E> type;
+    private final Map<String, E> constants;
+
+    private EnumLookup(Class<E> type) {
+        Map<String, E> constants = new HashMap<>();
+        for (E constant : type.getEnumConstants()) {
+            constants.put(constant.name(), constant);
+            constants.put(constant.name().toLowerCase(), constant);
+        }
+        this.type = type;
+        this.constants = Map.copyOf(constants);
+    }
+
+    static <E extends Enum<E>> EnumLookup<E> of(Class<E> type) {
+        return new EnumLookup<>(type);
+    }
+
+    /**
+     * @return Constant of the name in any case, null if the name is null
+     * @throws IllegalArgumentException if the enum has no constant of the name
+     */
+    E valueOf(String name) {
+        if (name == null) {
+            return null;
+        }
+        E constant = constants.get(name);
+        return constant != null ? constant : Enum.valueOf(type, name.toUpperCase());
+    }
+}
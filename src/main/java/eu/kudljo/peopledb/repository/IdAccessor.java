@@ -0,0 +1,122 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.annotation.Id;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * Reads and writes the {@link Id} field of an entity class. Entities compiled with the annotation processor
+ * call their getter and setter from {@link GeneratedMetadata}, others use method handles,
+ * which are looked up once per class instead of scanning fields for every entity.
+ */
+final class IdAccessor {
+    private static final ClassValue<IdAccessor> ACCESSORS = new ClassValue<>() {
+        @Override
+        protected IdAccessor computeValue(Class<?> entityClass) {
+            return create(entityClass);
+        }
+    };
+
+    private final IdGetter getter;
+    private final IdSetter setter;
+
+    /**
+     * @param setter Null if the ID cannot be written
+     */
+    IdAccessor(IdGetter getter, IdSetter setter) {
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * @return Generated accessor of the class or of its closest superclass, e.g. of a lazy loading subclass,
+     * completed by a method handle setter if the ID has no setter, like the final ID of Address
+     */
+    private static IdAccessor create(Class<?> entityClass) {
+        for (Class<?> declaringClass = entityClass; declaringClass != null; declaringClass = declaringClass.getSuperclass()) {
+            IdAccessor generatedAccessor = GeneratedMetadata.getIdAccessor(declaringClass);
+            if (generatedAccessor != null) {
+                return generatedAccessor.setter != null ? generatedAccessor
+                        : new IdAccessor(generatedAccessor.getter, lookUp(entityClass).setter);
+            }
+        }
+        return lookUp(entityClass);
+    }
+
+    private static IdAccessor lookUp(Class<?> entityClass) {
+        Field idField = findIdField(entityClass);
+        if (idField == null) {
+            return new IdAccessor(null, null);
+        }
+        try {
+            // setAccessible also allows writing the final ID of Address
+            idField.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle getter = lookup.unreflectGetter(idField).asType(MethodType.methodType(Object.class, Object.class));
+            MethodHandle setter = lookup.unreflectSetter(idField).asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return new IdAccessor(entity -> {
+                try {
+                    return (Long) (Object) getter.invokeExact(entity);
+                } catch (Throwable e) {
+                    throw new RuntimeException("Unable to get value of field 'Id'", e);
+                }
+            }, (entity, id) -> {
+                try {
+                    setter.invokeExact(entity, (Object) id);
+                } catch (Throwable e) {
+                    throw new RuntimeException("Unable to set value to field 'Id'", e);
+                }
+            });
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Unable to access field 'Id' of " + entityClass.getName(), e);
+        }
+    }
+
+    /**
+     * @return Field annotated by {@link Id} declared by the class or its superclasses, e.g. of a lazy loading subclass
+     */
+    private static Field findIdField(Class<?> entityClass) {
+        for (Class<?> declaringClass = entityClass; declaringClass != null; declaringClass = declaringClass.getSuperclass()) {
+            Field idField = Arrays.stream(declaringClass.getDeclaredFields())
+                    .filter(field -> field.isAnnotationPresent(Id.class))
+                    .findFirst()
+                    .orElse(null);
+            if (idField != null) {
+                return idField;
+            }
+        }
+        return null;
+    }
+
+    static IdAccessor of(Class<?> entityClass) {
+        return ACCESSORS.get(entityClass);
+    }
+
+    Long getId(Object entity) {
+        if (getter == null) {
+            throw new RuntimeException("Field with annotation 'Id' was not found");
+        }
+        return getter.getId(entity);
+    }
+
+    void setId(Object entity, Long id) {
+        if (setter == null) {
+            return;
+        }
+        setter.setId(entity, id);
+    }
+
+    @FunctionalInterface
+    interface IdGetter {
+        Long getId(Object entity);
+    }
+
+    @FunctionalInterface
+    interface IdSetter {
+        void setId(Object entity, Long id);
+    }
+}
@@ -0,0 +1,127 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.CrudOperation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records call counts, latency histograms, rows and errors per repository and {@link CrudOperation},
+ * and keeps the last operations slower than a threshold with their SQL and bind count.
+ * One instance may listen to several repositories.
+ */
+public class InMemoryRepositoryMetrics implements RepositoryListener {
+    public static final Duration DEFAULT_SLOW_QUERY_THRESHOLD = Duration.ofMillis(100);
+    public static final int DEFAULT_MAX_SLOW_QUERIES = 100;
+
+    private final long slowQueryThresholdNanos;
+    private final int maxSlowQueries;
+    private final Map<OperationKey, OperationMetrics> operationMetrics = new ConcurrentHashMap<>();
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+
+    public InMemoryRepositoryMetrics() {
+        this(DEFAULT_SLOW_QUERY_THRESHOLD, DEFAULT_MAX_SLOW_QUERIES);
+    }
+
+    /**
+     * @param maxSlowQueries Slow queries kept, older ones are dropped
+     */
+    public InMemoryRepositoryMetrics(Duration slowQueryThreshold, int maxSlowQueries) {
+        if (slowQueryThreshold.isNegative() || maxSlowQueries < 0) {
+            throw new IllegalArgumentException("Slow query threshold and maximum of slow queries must not be negative");
+        }
+        this.slowQueryThresholdNanos = slowQueryThreshold.toNanos();
+        this.maxSlowQueries = maxSlowQueries;
+    }
+
+    @Override
+    public void onOperation(RepositoryEvent event) {
+        OperationMetrics metrics = operationMetrics.computeIfAbsent(
+                new OperationKey(event.repositoryClass(), event.operation()), key -> new OperationMetrics());
+        metrics.latencies.record(event.elapsedNanos());
+        metrics.rowCount.add(event.rowCount());
+        if (event.failed()) {
+            metrics.errorCount.increment();
+        }
+        if (event.elapsedNanos() >= slowQueryThresholdNanos && maxSlowQueries > 0) {
+            addSlowQuery(new SlowQuery(Instant.now(), event.repositoryClass(), event.operation(), event.sql(),
+                    event.bindCount(), event.rowCount(), event.elapsedNanos(), event.failed()));
+        }
+    }
+
+    private void addSlowQuery(SlowQuery slowQuery) {
+        synchronized (slowQueries) {
+            if (slowQueries.size() == maxSlowQueries) {
+                slowQueries.removeFirst();
+            }
+            slowQueries.addLast(slowQuery);
+        }
+    }
+
+    /**
+     * @return Statistics of the operation on the repository, all zero if it was not called
+     */
+    public OperationStats getStats(Class<?> repositoryClass, CrudOperation operation) {
+        OperationMetrics metrics = operationMetrics.get(new OperationKey(repositoryClass, operation));
+        return metrics == null
+                ? new OperationStats(repositoryClass, operation, 0, 0, 0, 0, 0, 0, 0, 0)
+                : metrics.toStats(repositoryClass, operation);
+    }
+
+    /**
+     * @return Statistics of all called operations, by repository class name and operation
+     */
+    public List<OperationStats> getStats() {
+        List<OperationStats> stats = new ArrayList<>();
+        operationMetrics.forEach((key, metrics) -> stats.add(metrics.toStats(key.repositoryClass(), key.operation())));
+        stats.sort(Comparator.<OperationStats, String>comparing(operationStats -> operationStats.repositoryClass().getName())
+                .thenComparing(OperationStats::operation));
+        return stats;
+    }
+
+    /**
+     * @return Slow queries from the oldest to the latest
+     */
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return List.copyOf(slowQueries);
+        }
+    }
+
+    public Duration getSlowQueryThreshold() {
+        return Duration.ofNanos(slowQueryThresholdNanos);
+    }
+
+    /**
+     * Drops all statistics and slow queries.
+     */
+    public void reset() {
+        operationMetrics.clear();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    private record OperationKey(Class<?> repositoryClass, CrudOperation operation) {
+    }
+
+    private static final class OperationMetrics {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder errorCount = new LongAdder();
+        private final LongAdder rowCount = new LongAdder();
+
+        OperationStats toStats(Class<?> repositoryClass, CrudOperation operation) {
+            return new OperationStats(repositoryClass, operation, latencies.getTotalCount(), errorCount.sum(), rowCount.sum(),
+                    latencies.getTotalNanos(), latencies.getMaxNanos(), latencies.getValueAtPercentile(50),
+                    latencies.getValueAtPercentile(90), latencies.getValueAtPercentile(99));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.Address;
+import eu.kudljo.peopledb.model.Person;
+import eu.kudljo.peopledb.repository.PersonRowMapper.PersonReferences;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Person found with {@link eu.kudljo.peopledb.model.FetchPlan#LAZY}: its addresses, spouse and children are loaded
+ * by the repository when their getter is first called, each association by its own query.
+ * Setting an association before it is loaded replaces it without loading it.
+ * <p>
+ * Associations are loaded on the connection of the calling thread, so they can be read after the finding
+ * operation completed, but not once the connection of the repository is closed.
+ * Loading is synchronized, so instances shared through the entity cache can be read by several threads.
+ */
+final class LazyPerson extends Person {
+    private final PeopleRepository peopleRepository;
+    private final PersonReferences references;
+    private boolean homeAddressLoaded;
+    private boolean businessAddressLoaded;
+    private boolean spouseLoaded;
+    private boolean childrenLoaded;
+
+    LazyPerson(long personId, String firstName, String lastName, ZonedDateTime dob, BigDecimal salary,
+               PeopleRepository peopleRepository, PersonReferences references) {
+        super(personId, firstName, lastName, dob, salary);
+        this.peopleRepository = peopleRepository;
+        this.references = references;
+    }
+
+    @Override
+    public synchronized Optional<Address> getHomeAddress() {
+        if (!homeAddressLoaded) {
+            super.setHomeAddress(peopleRepository.loadAddress(references.homeAddressId()));
+            homeAddressLoaded = true;
+        }
+        return super.getHomeAddress();
+    }
+
+    @Override
+    public synchronized void setHomeAddress(Address homeAddress) {
+        super.setHomeAddress(homeAddress);
+        homeAddressLoaded = true;
+    }
+
+    @Override
+    public synchronized Optional<Address> getBusinessAddress() {
+        if (!businessAddressLoaded) {
+            super.setBusinessAddress(peopleRepository.loadAddress(references.businessAddressId()));
+            businessAddressLoaded = true;
+        }
+        return super.getBusinessAddress();
+    }
+
+    @Override
+    public synchronized void setBusinessAddress(Address businessAddress) {
+        super.setBusinessAddress(businessAddress);
+        businessAddressLoaded = true;
+    }
+
+    @Override
+    public synchronized Optional<Person> getSpouse() {
+        if (!spouseLoaded) {
+            super.setSpouse(peopleRepository.loadLazyPerson(references.spouseId()));
+            spouseLoaded = true;
+        }
+        return super.getSpouse();
+    }
+
+    @Override
+    public synchronized void setSpouse(Person spouse) {
+        super.setSpouse(spouse);
+        spouseLoaded = true;
+    }
+
+    @Override
+    public synchronized Set<Person> getChildren() {
+        if (!childrenLoaded) {
+            peopleRepository.loadLazyChildren(getId()).forEach(super::addChild);
+            childrenLoaded = true;
+        }
+        return super.getChildren();
+    }
+
+    /**
+     * Loads the children first, so the added child joins them instead of being replaced by them.
+     */
+    @Override
+    public synchronized void addChild(Person child) {
+        getChildren();
+        super.addChild(child);
+    }
+
+    /**
+     * Loads all associations not loaded yet.
+     */
+    synchronized void loadAssociations() {
+        getHomeAddress();
+        getBusinessAddress();
+        getSpouse();
+        getChildren();
+    }
+}
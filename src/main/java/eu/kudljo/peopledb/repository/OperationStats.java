@@ -0,0 +1,31 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.CrudOperation;
+
+/**
+ * Snapshot of the operations of one kind on one repository, see {@link InMemoryRepositoryMetrics}.
+ * Percentiles are accurate to 1/16 of their value.
+ *
+ * @param callCount  Completed and failed operations
+ * @param errorCount Failed operations
+ * @param rowCount   Rows returned or affected by the operations
+ */
+public record OperationStats(Class<?> repositoryClass,
+                             CrudOperation operation,
+                             long callCount,
+                             long errorCount,
+                             long rowCount,
+                             long totalNanos,
+                             long maxNanos,
+                             long p50Nanos,
+                             long p90Nanos,
+                             long p99Nanos) {
+
+    public double averageNanos() {
+        return callCount == 0 ? 0 : (double) totalNanos / callCount;
+    }
+
+    public double errorRate() {
+        return callCount == 0 ? 0 : (double) errorCount / callCount;
+    }
+}
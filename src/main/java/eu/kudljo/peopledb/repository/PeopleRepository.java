@@ -1,18 +1,39 @@
 package eu.kudljo.peopledb.repository;
 
 import eu.kudljo.peopledb.annotation.SQL;
+import eu.kudljo.peopledb.exception.DataException;
 import eu.kudljo.peopledb.model.Address;
 import eu.kudljo.peopledb.model.CrudOperation;
+import eu.kudljo.peopledb.model.FetchPlan;
+import eu.kudljo.peopledb.model.GraphLoadMode;
 import eu.kudljo.peopledb.model.Person;
-import eu.kudljo.peopledb.model.Region;
+import eu.kudljo.peopledb.model.PersonAttribute;
+import eu.kudljo.peopledb.model.PersonPageCursor;
+import eu.kudljo.peopledb.model.PersonSortKey;
+import eu.kudljo.peopledb.model.SalaryStats;
+import eu.kudljo.peopledb.repository.PersonRowMapper.PersonReferences;
 
-import java.math.BigDecimal;
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.joining;
 
 public class PeopleRepository extends CRUDRepository<Person> {
     private AddressRepository addressRepository;
@@ -21,6 +42,16 @@ public class PeopleRepository extends CRUDRepository<Person> {
             (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, SPOUSE, PARENT_ID)
             VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
             """;
+    /**
+     * People are identified by their email, a person with an email already in the table updates its row.
+     * EMAIL needs a unique index, see schema.sql, and people without email cannot be upserted.
+     */
+    public static final String UPSERT_PERSON_SQL = """
+            MERGE INTO PEOPLE
+            (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, SPOUSE, PARENT_ID)
+            KEY (EMAIL)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
     private static final String FIND_PERSON_BY_ID_SQL = """
             SELECT
             PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL,
@@ -51,20 +82,148 @@ public class PeopleRepository extends CRUDRepository<Person> {
             FROM PEOPLE AS PARENT
             FETCH FIRST 100 ROWS ONLY
             """;
+    private static final String PERSON_COLUMNS = """
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME,
+            PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL
+            """;
+    private static final String STREAM_ALL_SQL = "SELECT " + PERSON_COLUMNS + "FROM PEOPLE AS PARENT";
+    private static final String FIND_PAGE_SQL = "SELECT " + PERSON_COLUMNS + """
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.ID > ?
+            ORDER BY PARENT.ID
+            FETCH FIRST ? ROWS ONLY
+            """;
+    // each seeks on the (sort key, ID) index of the column, see schema.sql
+    private static final String FIND_FIRST_SORTED_PAGE_SQL = "SELECT " + PERSON_COLUMNS + """
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.%1$s IS NOT NULL
+            ORDER BY PARENT.%1$s, PARENT.ID
+            FETCH FIRST ? ROWS ONLY
+            """;
+    private static final String FIND_NEXT_SORTED_PAGE_SQL = "SELECT " + PERSON_COLUMNS + """
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.%1$s >= ? AND (PARENT.%1$s > ? OR PARENT.ID > ?)
+            ORDER BY PARENT.%1$s, PARENT.ID
+            FETCH FIRST ? ROWS ONLY
+            """;
+    private static final String FIND_NULL_SORTED_PAGE_SQL = "SELECT " + PERSON_COLUMNS + """
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.%1$s IS NULL AND PARENT.ID > ?
+            ORDER BY PARENT.ID
+            FETCH FIRST ? ROWS ONLY
+            """;
+    private static final Map<PersonSortKey, SortedPageSql> SORTED_PAGE_SQL = createSortedPageSql();
+    private static final String FIND_PEOPLE_WITH_REFERENCES_BY_IDS_SQL = "SELECT " + PERSON_COLUMNS + """
+            , PARENT.HOME_ADDRESS AS PARENT_HOME_ADDRESS, PARENT.BUSINESS_ADDRESS AS PARENT_BUSINESS_ADDRESS,
+            PARENT.SPOUSE AS PARENT_SPOUSE
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.ID IN (:ids)
+            """;
+    private static final String FIND_PEOPLE_BY_IDS_SQL = "SELECT " + PERSON_COLUMNS + """
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.ID IN (:ids)
+            """;
+    private static final String FIND_CHILDREN_BY_PARENT_IDS_SQL = "SELECT " + PERSON_COLUMNS + """
+            , PARENT.HOME_ADDRESS AS PARENT_HOME_ADDRESS, PARENT.BUSINESS_ADDRESS AS PARENT_BUSINESS_ADDRESS,
+            PARENT.SPOUSE AS PARENT_SPOUSE, PARENT.PARENT_ID AS PARENT_PARENT_ID
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.PARENT_ID IN (:ids)
+            ORDER BY PARENT.ID
+            """;
+    private static final String FIND_ADDRESSES_BY_IDS_SQL = """
+            SELECT HOME.ID AS HOME_ID, HOME.STREET_ADDRESS AS HOME_STREET_ADDRESS, HOME.ADDRESS2 AS HOME_ADDRESS2,
+            HOME.CITY AS HOME_CITY, HOME.STATE AS HOME_STATE, HOME.POSTCODE AS HOME_POSTCODE, HOME.COUNTY AS HOME_COUNTY,
+            HOME.REGION AS HOME_REGION, HOME.COUNTRY AS HOME_COUNTRY
+            FROM ADDRESSES AS HOME
+            WHERE HOME.ID IN (:ids)
+            """;
+    private static final String FIND_ADDRESS_IDS_BY_EMAILS_SQL =
+            "SELECT EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS FROM PEOPLE WHERE EMAIL IN (:ids)";
     private static final String COUNT_PEOPLE_SQL = "SELECT COUNT(*) AS COUNT FROM PEOPLE";
+    private static final String SALARY_STATS_SQL = "SELECT " + SalaryGrouping.SALARY_AGGREGATES + "FROM PEOPLE AS PARENT";
     private static final String DELETE_PERSON_BY_ID_SQL = "DELETE FROM PEOPLE WHERE ID = ?";
     private static final String DELETE_PEOPLE_BY_IDS_SQL = "DELETE FROM PEOPLE WHERE ID IN (:ids)";
+    private static final String UPDATE_SPOUSE_SQL = "UPDATE PEOPLE SET SPOUSE = ? WHERE ID = ?";
     private static final String UPDATE_PERSON_BY_ID_SQL = "UPDATE PEOPLE SET FIRST_NAME = ?, LAST_NAME = ?, DOB = ?, SALARY = ? WHERE ID = ?";
+    private static final Set<PersonAttribute> ALL_ATTRIBUTES = Collections.unmodifiableSet(EnumSet.allOf(PersonAttribute.class));
+    private static final Map<Set<PersonAttribute>, String> UPDATE_SQL_BY_ATTRIBUTES = new ConcurrentHashMap<>();
+    private static final String CRITERIA_COLUMNS = PERSON_COLUMNS + """
+            , PARENT.HOME_ADDRESS AS PARENT_HOME_ADDRESS, PARENT.BUSINESS_ADDRESS AS PARENT_BUSINESS_ADDRESS,
+            PARENT.SPOUSE AS PARENT_SPOUSE
+            """;
+    private static final int MAX_CACHED_CRITERIA_SHAPES = 256;
+    // IN list queries of this class: people with references, people, children, addresses, address IDs, delete
+    private static final int IN_LIST_QUERY_COUNT = 6;
+    private static final Map<PersonCriteria.Shape, String> FIND_SQL_BY_SHAPE = new ConcurrentHashMap<>();
+    private static final Map<PersonCriteria.Shape, String> COUNT_SQL_BY_SHAPE = new ConcurrentHashMap<>();
 
-    private Map<String, Integer> aliasColumnIndexMap = new HashMap<>();
+    private volatile GraphLoadMode graphLoadMode = GraphLoadMode.SELECT_IN;
+    private volatile FetchPlan defaultFetchPlan = FetchPlan.LAZY;
+    private volatile boolean dirtyTrackingEnabled;
 
     public PeopleRepository(Connection connection) {
         super(connection);
-        addressRepository = new AddressRepository(connection);
+        addressRepository = new AddressRepository(getConnectionProvider());
+    }
+
+    public PeopleRepository(DataSource dataSource) {
+        super(dataSource);
+        addressRepository = new AddressRepository(getConnectionProvider());
+    }
+
+    /**
+     * @param graphLoadMode How {@link #findById} loads the children, addresses and spouse of a person
+     */
+    public void setGraphLoadMode(GraphLoadMode graphLoadMode) {
+        this.graphLoadMode = graphLoadMode;
+    }
+
+    public GraphLoadMode getGraphLoadMode() {
+        return graphLoadMode;
+    }
+
+    /**
+     * @param defaultFetchPlan Fetch plan of {@link #findById(Long)}
+     */
+    public void setDefaultFetchPlan(FetchPlan defaultFetchPlan) {
+        this.defaultFetchPlan = defaultFetchPlan;
+    }
+
+    public FetchPlan getDefaultFetchPlan() {
+        return defaultFetchPlan;
+    }
+
+    /**
+     * The dirty attributes of a person are read once for the SQL and once to bind it, so a person must not be
+     * modified while it is updated, which also applies to people shared through the entity cache.
+     *
+     * @param dirtyTrackingEnabled If true, {@link #update} and {@link #updateAll} write only the attributes
+     *                             changed since the person was loaded, saved or updated, and skip unchanged people.
+     *                             Otherwise, the default, all attributes are written.
+     */
+    public void setDirtyTrackingEnabled(boolean dirtyTrackingEnabled) {
+        this.dirtyTrackingEnabled = dirtyTrackingEnabled;
+    }
+
+    @Override
+    public void close() {
+        try {
+            super.close();
+        } finally {
+            addressRepository.close();
+        }
+    }
+
+    @Override
+    protected void preSave(Person person) {
+        person.getHomeAddress().ifPresent(addressRepository::save);
+        person.getBusinessAddress().ifPresent(addressRepository::save);
+        person.getSpouse().ifPresent(this::save);
     }
 
     @Override
     @SQL(value = SAVE_PERSON_SQL, operationType = CrudOperation.SAVE)
+    @SQL(value = UPSERT_PERSON_SQL, operationType = CrudOperation.UPSERT)
     void mapForSave(Person person, PreparedStatement preparedStatement) throws SQLException {
         preparedStatement.setString(1, person.getFirstName());
         preparedStatement.setString(2, person.getLastName());
@@ -73,36 +232,201 @@ public class PeopleRepository extends CRUDRepository<Person> {
         preparedStatement.setString(5, person.getEmail());
         associateAddressWithPerson(preparedStatement, person.getHomeAddress(), 6);
         associateAddressWithPerson(preparedStatement, person.getBusinessAddress(), 7);
-        associatePersonWithPerson(preparedStatement, person.getSpouse(), 8);
+        associatePersonWithPerson(preparedStatement, person, person.getSpouse(), 8);
         associateChildWithPerson(preparedStatement, person.getParent(), 9);
     }
 
     @Override
     protected void postSave(Person entity, long id) {
-        entity.getChildren().stream()
-                .forEach(this::save);
+        entity.markClean();
+        linkSpouseBack(entity, id);
+        if (!entity.getChildren().isEmpty()) {
+            saveAll(entity.getChildren());
+        }
+    }
+
+    /**
+     * A spouse referring back to the person is saved before the person has an ID, so its SPOUSE column is
+     * set once both IDs are known.
+     *
+     * @throws DataException if the spouse cannot be updated
+     */
+    @SuppressWarnings("try")
+    private void linkSpouseBack(Person person, long id) {
+        Person spouse = person.getSpouse().orElse(null);
+        if (spouse == null || spouse.getId() == null || spouse.getSpouse().orElse(null) != person) {
+            return;
+        }
+        try (ConnectionLease lease = acquireConnection()) {
+            PreparedStatement preparedStatement = getCachedStatement(UPDATE_SPOUSE_SQL);
+            preparedStatement.setLong(1, id);
+            preparedStatement.setLong(2, spouse.getId());
+            preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new DataException("Unable to link spouse " + spouse.getId() + " to person " + id, e);
+        }
+    }
+
+    /**
+     * Upserts the graphs of the people instead of inserting them, so re-sending the same people writes no new rows:
+     * the spouses and the children are upserted by email as well, and the addresses update the rows the people
+     * already refer to, or are inserted if they have none. The address IDs of the whole batch are looked up
+     * with one IN-list query, skipped if no person has an address, and the addresses are written in batches.
+     * Like by {@link #save}, a spouse referring back to the person needs a {@link Session}.
+     *
+     * @throws IllegalArgumentException if a person, its spouse or a child has no email
+     */
+    @Override
+    protected void preUpsert(List<Person> people) {
+        List<Person> peopleWithAddresses = new ArrayList<>();
+        Set<Person> spouses = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Person person : people) {
+            requireEmail(person);
+            person.getSpouse().ifPresent(spouse -> {
+                requireEmail(spouse);
+                spouses.add(spouse);
+            });
+            person.getChildren().forEach(PeopleRepository::requireEmail);
+            if (person.getHomeAddress().isPresent() || person.getBusinessAddress().isPresent()) {
+                peopleWithAddresses.add(person);
+            }
+        }
+        if (!peopleWithAddresses.isEmpty()) {
+            upsertAddresses(peopleWithAddresses);
+        }
+        if (!spouses.isEmpty()) {
+            upsertAll(new ArrayList<>(spouses));
+        }
+    }
+
+    @Override
+    protected void postUpsert(Person person, long id) {
+        person.markClean();
+        linkSpouseBack(person, id);
+        if (!person.getChildren().isEmpty()) {
+            upsertAll(person.getChildren());
+        }
+    }
+
+    private static void requireEmail(Person person) {
+        if (person.getEmail() == null) {
+            throw new IllegalArgumentException("People are upserted by email, %s has none".formatted(person));
+        }
+    }
+
+    /**
+     * Updates the rows of addresses that were already saved, or the rows the people already refer to,
+     * and inserts the other addresses, each in batches.
+     */
+    private void upsertAddresses(List<Person> people) {
+        Map<String, AddressIds> addressIdsByEmail = findAddressIdsByEmail(people);
+        Set<Address> addresses = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Person person : people) {
+            AddressIds addressIds = addressIdsByEmail.getOrDefault(person.getEmail(), new AddressIds(null, null, null));
+            person.getHomeAddress().ifPresent(address -> addresses.add(reuseAddressRow(address, addressIds.homeAddressId())));
+            person.getBusinessAddress().ifPresent(address -> addresses.add(reuseAddressRow(address, addressIds.businessAddressId())));
+        }
+        List<Address> newAddresses = new ArrayList<>();
+        List<Address> savedAddresses = new ArrayList<>();
+        for (Address address : addresses) {
+            (address.id() == null ? newAddresses : savedAddresses).add(address);
+        }
+        if (!newAddresses.isEmpty()) {
+            addressRepository.saveAll(newAddresses);
+        }
+        if (!savedAddresses.isEmpty()) {
+            addressRepository.updateAll(savedAddresses);
+        }
+    }
+
+    private static Address reuseAddressRow(Address address, Long existingAddressId) {
+        if (address.id() == null && existingAddressId != null) {
+            IdAccessor.of(Address.class).setId(address, existingAddressId);
+        }
+        return address;
+    }
+
+    /**
+     * @return Address IDs of the rows of the people by email, in IN-list chunks padded like ID lists
+     */
+    private Map<String, AddressIds> findAddressIdsByEmail(List<Person> people) {
+        List<String> emails = people.stream().map(Person::getEmail).distinct().toList();
+        Map<String, AddressIds> addressIdsByEmail = new HashMap<>();
+        for (int fromIndex = 0; fromIndex < emails.size(); fromIndex += MAX_IN_LIST_SIZE) {
+            List<String> chunk = emails.subList(fromIndex, Math.min(fromIndex + MAX_IN_LIST_SIZE, emails.size()));
+            int parameterCount = getInListSize(chunk.size());
+            queryRows(expandInList(FIND_ADDRESS_IDS_BY_EMAILS_SQL, parameterCount), preparedStatement -> {
+                for (int index = 0; index < parameterCount; index++) {
+                    preparedStatement.setString(index + 1, chunk.get(Math.min(index, chunk.size() - 1)));
+                }
+            }, resultSet -> row -> new AddressIds(row.getString(1), row.getObject(2, Long.class), row.getObject(3, Long.class)))
+                    .forEach(addressIds -> addressIdsByEmail.put(addressIds.email(), addressIds));
+        }
+        return addressIdsByEmail;
+    }
+
+    private record AddressIds(String email, Long homeAddressId, Long businessAddressId) {
+    }
+
+    @Override
+    protected void postUpdate(Person person) {
+        person.markClean();
+    }
+
+    @Override
+    String getUpdateSql(Person person) {
+        Set<PersonAttribute> attributes = getUpdatedAttributes(person);
+        if (attributes.isEmpty()) {
+            return null;
+        }
+        if (attributes.size() == ALL_ATTRIBUTES.size()) {
+            return super.getUpdateSql(person);
+        }
+        return UPDATE_SQL_BY_ATTRIBUTES.computeIfAbsent(EnumSet.copyOf(attributes), key -> key.stream()
+                .map(attribute -> attribute.columnName() + " = ?")
+                .collect(joining(", ", "UPDATE PEOPLE SET ", " WHERE ID = ?")));
+    }
+
+    private Set<PersonAttribute> getUpdatedAttributes(Person person) {
+        return dirtyTrackingEnabled ? person.getDirtyAttributes() : ALL_ATTRIBUTES;
     }
 
+    /**
+     * Binds the attributes of {@link #getUpdateSql(Person)}, in the order of {@link PersonAttribute}.
+     */
     @Override
     @SQL(value = UPDATE_PERSON_BY_ID_SQL, operationType = CrudOperation.UPDATE)
     void mapForUpdate(Person person, PreparedStatement preparedStatement) throws SQLException {
-        preparedStatement.setString(1, person.getFirstName());
-        preparedStatement.setString(2, person.getLastName());
-        preparedStatement.setTimestamp(3, convertDobToTimestamp(person.getDob()));
-        preparedStatement.setBigDecimal(4, person.getSalary());
-        preparedStatement.setLong(5, person.getId());
+        int parameterIndex = 1;
+        for (PersonAttribute attribute : getUpdatedAttributes(person)) {
+            switch (attribute) {
+                case FIRST_NAME -> preparedStatement.setString(parameterIndex, person.getFirstName());
+                case LAST_NAME -> preparedStatement.setString(parameterIndex, person.getLastName());
+                case DOB -> preparedStatement.setTimestamp(parameterIndex, convertDobToTimestamp(person.getDob()));
+                case SALARY -> preparedStatement.setBigDecimal(parameterIndex, person.getSalary());
+            }
+            parameterIndex++;
+        }
+        preparedStatement.setLong(parameterIndex, person.getId());
     }
 
     @Override
     @SQL(value = FIND_PERSON_BY_ID_SQL, operationType = CrudOperation.FIND_BY_ID)
+    @SQL(value = FIND_PEOPLE_WITH_REFERENCES_BY_IDS_SQL, operationType = CrudOperation.FIND_BY_IDS)
     @SQL(value = FIND_ALL_SQL, operationType = CrudOperation.FIND_ALL)
     @SQL(value = COUNT_PEOPLE_SQL, operationType = CrudOperation.COUNT)
     @SQL(value = DELETE_PERSON_BY_ID_SQL, operationType = CrudOperation.DELETE_BY_ID)
     @SQL(value = DELETE_PEOPLE_BY_IDS_SQL, operationType = CrudOperation.DELETE_BY_IDS)
     Person extractEntityFromResultSet(ResultSet resultSet) throws SQLException {
+        return extractEntityFromResultSet(resultSet, compileRowMapper(resultSet.getMetaData()));
+    }
+
+    @Override
+    Person extractEntityFromResultSet(ResultSet resultSet, RowMapper<Person> rowMapper) throws SQLException {
+        PersonRowMapper personRowMapper = (PersonRowMapper) rowMapper;
         Person person = null;
         do {
-            Person currentPerson = extractPerson(resultSet, "PARENT_").get();
+            Person currentPerson = personRowMapper.mapRow(resultSet);
             if (person == null) {
                 person = currentPerson;
             } if (!person.equals(currentPerson)) {
@@ -110,92 +434,376 @@ public class PeopleRepository extends CRUDRepository<Person> {
                 break;
             }
 
-            Optional<Person> child = extractPerson(resultSet, "CHILD_");
+            Optional<Person> child = personRowMapper.mapChild(resultSet);
 
-            Address homeAddress = extractAddress(resultSet, "HOME_");
+            Address homeAddress = personRowMapper.mapHomeAddress(resultSet);
             person.setHomeAddress(homeAddress);
-            Address businessAddress = extractAddress(resultSet, "BIZ_");
+            Address businessAddress = personRowMapper.mapBusinessAddress(resultSet);
             person.setBusinessAddress(businessAddress);
-            Optional<Person> spouse = extractPerson(resultSet, "S_");
+            Optional<Person> spouse = personRowMapper.mapSpouse(resultSet);
             spouse.ifPresent(person::setSpouse);
             child.ifPresent(person::addChild);
         } while (resultSet.next());
         return person;
     }
 
-    private Optional<Person> extractPerson(ResultSet resultSet, String aliasPrefix) throws SQLException {
-        Long personId = getValueByAlias(aliasPrefix + "ID", resultSet, Long.class);
-        if (personId == null) {
-            return Optional.empty();
+    /**
+     * Finds the person with the {@link #setDefaultFetchPlan default fetch plan}, {@link FetchPlan#LAZY} unless changed.
+     */
+    @Override
+    public Optional<Person> findById(Long id) {
+        return findById(id, defaultFetchPlan);
+    }
+
+    /**
+     * With {@link FetchPlan#LAZY} only the row of the person is queried, its addresses, spouse and children
+     * are loaded when their getters are first called. With {@link FetchPlan#EAGER} they are loaded
+     * as the {@link #setGraphLoadMode graph load mode} says, also for a lazy person found in the entity cache.
+     */
+    public Optional<Person> findById(Long id, FetchPlan fetchPlan) {
+        if (fetchPlan == FetchPlan.LAZY) {
+            return findById(id, FIND_PEOPLE_WITH_REFERENCES_BY_IDS_SQL, this::loadLazyById);
         }
-        String firstName = getValueByAlias(aliasPrefix + "FIRST_NAME", resultSet, String.class);
-        String lastName = getValueByAlias(aliasPrefix + "LAST_NAME", resultSet, String.class);
-        ZonedDateTime dob = ZonedDateTime.of(getValueByAlias(aliasPrefix + "DOB", resultSet, Timestamp.class).toLocalDateTime(), ZoneId.of("+0"));
-        BigDecimal salary = getValueByAlias(aliasPrefix + "SALARY", resultSet, BigDecimal.class);
-        Person person = new Person(personId, firstName, lastName, dob, salary);
-        return Optional.of(person);
+        Optional<Person> person = findById(id, getLoadByIdSql(), this::loadById);
+        person.ifPresent(foundPerson -> {
+            if (foundPerson instanceof LazyPerson lazyPerson) {
+                lazyPerson.loadAssociations();
+            }
+        });
+        return person;
     }
 
-    private Address extractAddress(ResultSet resultSet, String aliasPrefix) throws SQLException {
-        Long addressId = getValueByAlias(aliasPrefix + "ID", resultSet, Long.class);
-        if (addressId == null) {
+    /**
+     * @return Query of the person run by {@link #loadById}, without the association queries of
+     * {@link GraphLoadMode#SELECT_IN}
+     */
+    @Override
+    String getLoadByIdSql() {
+        return graphLoadMode == GraphLoadMode.JOIN ? super.getLoadByIdSql() : FIND_PEOPLE_WITH_REFERENCES_BY_IDS_SQL;
+    }
+
+    /**
+     * @return Query of the people run by {@link #loadAllById}, without the association queries
+     */
+    @Override
+    String getLoadAllByIdSql() {
+        return FIND_PEOPLE_WITH_REFERENCES_BY_IDS_SQL;
+    }
+
+    /**
+     * @return Capacity for the IN list queries of the associations and of the upsert at each IN list size,
+     * and for the find and count queries of every cached criteria shape
+     */
+    @Override
+    int getStatementCacheCapacity() {
+        return super.getStatementCacheCapacity() + IN_LIST_QUERY_COUNT * IN_LIST_SIZE_COUNT + 2 * MAX_CACHED_CRITERIA_SHAPES;
+    }
+
+    @Override
+    Person loadById(Long id) throws SQLException {
+        if (graphLoadMode == GraphLoadMode.JOIN) {
+            return super.loadById(id);
+        }
+        return loadAllById(List.of(id)).get(id);
+    }
+
+    /**
+     * Loads the people with their addresses, spouses and children with IN-list queries, whatever the graph load mode.
+     */
+    @Override
+    Map<Long, Person> loadAllById(Collection<Long> ids) throws SQLException {
+        Map<Person, PersonReferences> people = new LinkedHashMap<>();
+        queryInChunks(FIND_PEOPLE_WITH_REFERENCES_BY_IDS_SQL, ids, (resultSet, rowMapper) -> {
+            PersonRowMapper personRowMapper = (PersonRowMapper) rowMapper;
+            people.put(personRowMapper.mapRow(resultSet), personRowMapper.mapReferences(resultSet));
+        });
+        loadAssociations(people);
+        Map<Long, Person> peopleById = new HashMap<>();
+        for (Person person : people.keySet()) {
+            peopleById.put(person.getId(), person);
+        }
+        return peopleById;
+    }
+
+    /**
+     * @return {@link LazyPerson} of the ID, or null if there is none
+     */
+    private Person loadLazyById(Long id) throws SQLException {
+        List<Person> people = new ArrayList<>(1);
+        queryInChunks(FIND_PEOPLE_WITH_REFERENCES_BY_IDS_SQL, List.of(id), (resultSet, rowMapper) ->
+                people.add(((PersonRowMapper) rowMapper).mapLazyRow(resultSet, this)));
+        return people.isEmpty() ? null : people.get(0);
+    }
+
+    /**
+     * Loads the address of a {@link LazyPerson}, reported as {@link CrudOperation#FIND_BY_IDS}.
+     *
+     * @return Address of the ID, or null if the ID is null or has no address
+     * @throws DataException if the address cannot be loaded
+     */
+    Address loadAddress(Long id) {
+        if (id == null) {
             return null;
         }
-        String streetAddress = getValueByAlias(aliasPrefix + "STREET_ADDRESS", resultSet, String.class);
-        String address2 = getValueByAlias(aliasPrefix + "ADDRESS2", resultSet, String.class);
-        String city = getValueByAlias(aliasPrefix + "CITY", resultSet, String.class);
-        String state = getValueByAlias(aliasPrefix + "STATE", resultSet, String.class);
-        String postcode = getValueByAlias(aliasPrefix + "POSTCODE", resultSet, String.class);
-        String county = getValueByAlias(aliasPrefix + "COUNTY", resultSet, String.class);
-        Region region = Region.valueOf(getValueByAlias(aliasPrefix + "REGION", resultSet, String.class).toUpperCase());
-        String country = getValueByAlias(aliasPrefix + "COUNTRY", resultSet, String.class);
-        return new Address(addressId, streetAddress, address2, city, state, postcode, country, county, region);
-    }
-
-    private <T> T getValueByAlias(String alias, ResultSet resultSet, Class<T> clazz) throws SQLException {
-        int columnCount = resultSet.getMetaData().getColumnCount();
-        Integer foundIndex = getIndexForAlias(alias, resultSet, columnCount);
-        return foundIndex == 0 ? null : (T) resultSet.getObject(foundIndex);
-    }
-
-    private int getIndexForAlias(String alias, ResultSet resultSet, int columnCount) throws SQLException {
-        int foundIndex = aliasColumnIndexMap.getOrDefault(alias, 0);
-        if (foundIndex == 0) {
-            for (int columnIndex = 1; columnIndex <= columnCount; columnIndex++) {
-                if (alias.equals(resultSet.getMetaData().getColumnLabel(columnIndex))) {
-                    foundIndex = columnIndex;
-                    aliasColumnIndexMap.put(alias, foundIndex);
-                    break;
-                }
+        List<Address> addresses = new ArrayList<>(1);
+        queryInChunks(CrudOperation.FIND_BY_IDS, FIND_ADDRESSES_BY_IDS_SQL, List.of(id), (resultSet, rowMapper) ->
+                addresses.add(((PersonRowMapper) rowMapper).mapHomeAddress(resultSet)));
+        return addresses.isEmpty() ? null : addresses.get(0);
+    }
+
+    /**
+     * Loads the spouse of a {@link LazyPerson}, itself lazy, reported as {@link CrudOperation#FIND_BY_IDS}.
+     *
+     * @return Person of the ID, or null if the ID is null or has no person
+     * @throws DataException if the person cannot be loaded
+     */
+    Person loadLazyPerson(Long id) {
+        if (id == null) {
+            return null;
+        }
+        List<Person> people = new ArrayList<>(1);
+        queryInChunks(CrudOperation.FIND_BY_IDS, FIND_PEOPLE_WITH_REFERENCES_BY_IDS_SQL, List.of(id), (resultSet, rowMapper) ->
+                people.add(((PersonRowMapper) rowMapper).mapLazyRow(resultSet, this)));
+        return people.isEmpty() ? null : people.get(0);
+    }
+
+    /**
+     * Loads the children of a {@link LazyPerson}, themselves lazy, reported as {@link CrudOperation#QUERY}.
+     *
+     * @throws DataException if the children cannot be loaded
+     */
+    List<Person> loadLazyChildren(Long parentId) {
+        List<Person> children = new ArrayList<>();
+        queryInChunks(CrudOperation.QUERY, FIND_CHILDREN_BY_PARENT_IDS_SQL, List.of(parentId), (resultSet, rowMapper) ->
+                children.add(((PersonRowMapper) rowMapper).mapLazyRow(resultSet, this)));
+        return children;
+    }
+
+    /**
+     * Loads the addresses, spouses and children of the people with one IN list query per association,
+     * whatever the number of people, and sets them on the people.
+     *
+     * @param people People with the IDs of the rows they refer to
+     */
+    private void loadAssociations(Map<Person, PersonReferences> people) throws SQLException {
+        if (people.isEmpty()) {
+            return;
+        }
+        Set<Long> addressIds = new HashSet<>();
+        Set<Long> spouseIds = new HashSet<>();
+        Map<Long, Person> peopleById = new HashMap<>();
+        people.forEach((person, references) -> {
+            addressIds.add(references.homeAddressId());
+            addressIds.add(references.businessAddressId());
+            spouseIds.add(references.spouseId());
+            peopleById.put(person.getId(), person);
+        });
+
+        Map<Long, Address> addresses = new HashMap<>();
+        queryInChunks(FIND_ADDRESSES_BY_IDS_SQL, addressIds, (resultSet, rowMapper) -> {
+            Address address = ((PersonRowMapper) rowMapper).mapHomeAddress(resultSet);
+            addresses.put(address.id(), address);
+        });
+        Map<Long, Person> spouses = new HashMap<>();
+        queryInChunks(FIND_PEOPLE_BY_IDS_SQL, spouseIds, (resultSet, rowMapper) -> {
+            Person spouse = rowMapper.mapRow(resultSet);
+            spouses.put(spouse.getId(), spouse);
+        });
+        queryInChunks(FIND_CHILDREN_BY_PARENT_IDS_SQL, peopleById.keySet(), (resultSet, rowMapper) -> {
+            Long parentId = ((PersonRowMapper) rowMapper).mapReferences(resultSet).parentId();
+            peopleById.get(parentId).addChild(rowMapper.mapRow(resultSet));
+        });
+
+        people.forEach((person, references) -> {
+            person.setHomeAddress(addresses.get(references.homeAddressId()));
+            person.setBusinessAddress(addresses.get(references.businessAddressId()));
+            person.setSpouse(spouses.get(references.spouseId()));
+        });
+    }
+
+    /**
+     * Keyset pagination ordered by {@code sortKey} and ID as a tie-breaker. People without a value of the sort key
+     * come after all others.
+     *
+     * @param after Cursor of the last person of the previous page, see {@link PersonPageCursor#after},
+     *              or null for the first page
+     * @throws DataException if the query fails
+     */
+    public List<Person> findPage(PersonSortKey sortKey, PersonPageCursor after, int limit) {
+        SortedPageSql sql = SORTED_PAGE_SQL.get(sortKey);
+        if (after != null && after.sortKeyValue() == null) {
+            return findNullSortedPage(sql, after.id(), limit);
+        }
+        List<Person> people;
+        if (after == null) {
+            people = findPage(sql.first(), preparedStatement -> preparedStatement.setInt(1, limit));
+        } else {
+            Object afterKey = after.sortKeyValue() instanceof ZonedDateTime dob
+                    ? convertDobToTimestamp(dob)
+                    : after.sortKeyValue();
+            people = findPage(sql.next(), preparedStatement -> {
+                preparedStatement.setObject(1, afterKey);
+                preparedStatement.setObject(2, afterKey);
+                preparedStatement.setLong(3, after.id());
+                preparedStatement.setInt(4, limit);
+            });
+        }
+        // the people without a value are only queried once those with a value ran out
+        if (people.size() < limit) {
+            people = new ArrayList<>(people);
+            people.addAll(findNullSortedPage(sql, Long.MIN_VALUE, limit - people.size()));
+        }
+        return people;
+    }
+
+    private List<Person> findNullSortedPage(SortedPageSql sql, long afterId, int limit) {
+        return findPage(sql.nullTail(), preparedStatement -> {
+            preparedStatement.setLong(1, afterId);
+            preparedStatement.setInt(2, limit);
+        });
+    }
+
+    private static Map<PersonSortKey, SortedPageSql> createSortedPageSql() {
+        Map<PersonSortKey, SortedPageSql> sqlBySortKey = new EnumMap<>(PersonSortKey.class);
+        for (PersonSortKey sortKey : PersonSortKey.values()) {
+            sqlBySortKey.put(sortKey, new SortedPageSql(
+                    FIND_FIRST_SORTED_PAGE_SQL.formatted(sortKey.columnName()),
+                    FIND_NEXT_SORTED_PAGE_SQL.formatted(sortKey.columnName()),
+                    FIND_NULL_SORTED_PAGE_SQL.formatted(sortKey.columnName())));
+        }
+        return sqlBySortKey;
+    }
+
+    /**
+     * Seeks of a sort key: the first page and the pages after a value, ordered by the key,
+     * and the pages of the people without a value, ordered by ID.
+     */
+    private record SortedPageSql(String first, String next, String nullTail) {
+    }
+
+    /**
+     * Finds the people of the criteria, whose associations are loaded on first access like by {@link FetchPlan#LAZY}.
+     * The SQL of each query shape is built once, its statement and row mapper are cached like those of fixed queries.
+     *
+     * @throws DataException if the query fails
+     */
+    public List<Person> find(PersonCriteria criteria) {
+        String sql = getCriteriaSql(FIND_SQL_BY_SHAPE, criteria.getShape(), true);
+        return queryRows(sql, preparedStatement -> criteria.bind(preparedStatement, true), resultSet -> {
+            PersonRowMapper rowMapper = (PersonRowMapper) getRowMapper(sql, resultSet);
+            return row -> manage(rowMapper.mapLazyRow(row, this));
+        });
+    }
+
+    /**
+     * @return Number of people of the criteria, regardless of its order and limit
+     * @throws DataException if the query fails
+     */
+    public long count(PersonCriteria criteria) {
+        String sql = getCriteriaSql(COUNT_SQL_BY_SHAPE, criteria.getCountShape(), false);
+        return queryRows(sql, preparedStatement -> criteria.bind(preparedStatement, false),
+                resultSet -> row -> row.getLong("COUNT")).get(0);
+    }
+
+    /**
+     * @return SQL of the shape, built once for up to {@link #MAX_CACHED_CRITERIA_SHAPES} shapes
+     */
+    private static String getCriteriaSql(Map<PersonCriteria.Shape, String> sqlByShape, PersonCriteria.Shape shape, boolean select) {
+        String sql = sqlByShape.get(shape);
+        if (sql == null) {
+            sql = select ? shape.toSelectSql(CRITERIA_COLUMNS) : shape.toCountSql();
+            if (sqlByShape.size() < MAX_CACHED_CRITERIA_SHAPES) {
+                sql = Objects.requireNonNullElse(sqlByShape.putIfAbsent(shape, sql), sql);
             }
         }
-        return foundIndex;
+        return sql;
+    }
+
+    /**
+     * @return Salary statistics of all people, aggregated by the database in one pass over the table
+     * @throws DataException if the query fails
+     */
+    public SalaryStats getSalaryStats() {
+        return query(SALARY_STATS_SQL, resultSet -> mapSalaryStats(resultSet, 1)).get(0);
+    }
+
+    /**
+     * Aggregates salaries per group in the database, so only one row per group is transferred
+     * instead of every person.
+     *
+     * @return Salary statistics by group key, ordered by it
+     * @throws DataException if the query fails
+     */
+    public <K> Map<K, SalaryStats> getSalaryStats(SalaryGrouping<K> grouping) {
+        Map<K, SalaryStats> salaryStats = new LinkedHashMap<>();
+        for (GroupSalaryStats<K> groupStats : query(grouping.getSql(), resultSet -> new GroupSalaryStats<>(
+                grouping.readKey(resultSet, 1), mapSalaryStats(resultSet, 2)))) {
+            salaryStats.put(groupStats.key(), groupStats.salaryStats());
+        }
+        return salaryStats;
     }
 
-    private static Timestamp convertDobToTimestamp(ZonedDateTime dob) {
+    /**
+     * Reads the columns of {@link SalaryGrouping#SALARY_AGGREGATES}, SQL NULL of groups without salary as 0.
+     */
+    private static SalaryStats mapSalaryStats(ResultSet resultSet, int firstColumnIndex) throws SQLException {
+        return new SalaryStats(
+                resultSet.getLong(firstColumnIndex),
+                resultSet.getDouble(firstColumnIndex + 1),
+                resultSet.getDouble(firstColumnIndex + 2),
+                resultSet.getDouble(firstColumnIndex + 3),
+                resultSet.getDouble(firstColumnIndex + 4),
+                resultSet.getDouble(firstColumnIndex + 5),
+                resultSet.getDouble(firstColumnIndex + 6));
+    }
+
+    private record GroupSalaryStats<K>(K key, SalaryStats salaryStats) {
+    }
+
+    @Override
+    @SQL(value = STREAM_ALL_SQL, operationType = CrudOperation.STREAM_ALL)
+    @SQL(value = FIND_PAGE_SQL, operationType = CrudOperation.FIND_PAGE)
+    Person extractEntityFromRow(ResultSet resultSet) throws SQLException {
+        return compileRowMapper(resultSet.getMetaData()).mapRow(resultSet);
+    }
+
+    @Override
+    RowMapper<Person> compileRowMapper(ResultSetMetaData metaData) throws SQLException {
+        return new PersonRowMapper(metaData);
+    }
+
+    static Timestamp convertDobToTimestamp(ZonedDateTime dob) {
         return Timestamp.valueOf(dob.withZoneSameInstant(ZoneId.of("+0")).toLocalDateTime());
     }
 
     private void associateAddressWithPerson(PreparedStatement preparedStatement, Optional<Address> address, int parameterIndex) throws SQLException {
-        Address savedAddress;
         if (address.isPresent()) {
-            savedAddress = addressRepository.save(address.get());
-            preparedStatement.setLong(parameterIndex, savedAddress.id());
+            preparedStatement.setLong(parameterIndex, address.get().id());
         } else {
             preparedStatement.setObject(parameterIndex, null);
         }
     }
 
-    private void associatePersonWithPerson(PreparedStatement preparedStatement, Optional<Person> person, int parameterIndex) throws SQLException {
-        Person savedPerson;
-        if (person.isPresent()) {
-            savedPerson = this.save(person.get());
-            preparedStatement.setLong(parameterIndex, savedPerson.getId());
-        } else {
+    /**
+     * @throws DataException if the spouse has no ID, unless it refers back to the person within a {@link Session},
+     *                       which saves it only once and links it by {@link #linkSpouseBack}
+     */
+    private void associatePersonWithPerson(PreparedStatement preparedStatement, Person person, Optional<Person> spouse,
+                                           int parameterIndex) throws SQLException {
+        if (spouse.isPresent() && spouse.get().getId() != null) {
+            preparedStatement.setLong(parameterIndex, spouse.get().getId());
+        } else if (spouse.isEmpty() || isUnsavedSpouseReferringBack(person, spouse.get())) {
             preparedStatement.setObject(parameterIndex, null);
+        } else {
+            throw new DataException("Spouse of %s was not saved".formatted(person));
         }
     }
 
+    private static boolean isUnsavedSpouseReferringBack(Person person, Person spouse) {
+        Session session = Session.current();
+        return session != null && session.isManaged(spouse) && spouse.getSpouse().orElse(null) == person;
+    }
+
     private void associateChildWithPerson(PreparedStatement preparedStatement, Optional<Person> person, int parameterIndex) throws SQLException {
         if (person.isPresent()) {
             preparedStatement.setLong(parameterIndex, person.get().getId());
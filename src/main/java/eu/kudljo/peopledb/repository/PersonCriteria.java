@@ -0,0 +1,178 @@
+package eu.kudljo.peopledb.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable query of people for {@link PeopleRepository#find(PersonCriteria)}, e.g.
+ * {@code PersonCriteria.where(PersonField.LAST_NAME.eq("Smith")).and(PersonField.SALARY.ge(salary)).limit(10)}.
+ * <p>
+ * Criteria are normalized to a {@link Shape}: conditions are sorted by field and operator, values and the limit
+ * are bound as parameters and IN lists are padded like ID lists. Criteria of the same shape share one SQL text,
+ * and so one cached prepared statement and row mapper, whatever their values and the order of their conditions.
+ */
+public final class PersonCriteria {
+    private static final PersonCriteria ALL = new PersonCriteria(List.of(), null, false, 0);
+    private static final Comparator<Condition> CONDITION_ORDER = Comparator
+            .comparing((Condition condition) -> condition.getField().getName())
+            .thenComparing(Condition::getOperator);
+
+    private final List<Condition> conditions;
+    private final PersonField<?> orderBy;
+    private final boolean descending;
+    private final int limit;
+
+    private PersonCriteria(List<Condition> conditions, PersonField<?> orderBy, boolean descending, int limit) {
+        this.conditions = conditions;
+        this.orderBy = orderBy;
+        this.descending = descending;
+        this.limit = limit;
+    }
+
+    /**
+     * @return Criteria of all people, ordered by ID
+     */
+    public static PersonCriteria all() {
+        return ALL;
+    }
+
+    public static PersonCriteria where(Condition condition) {
+        return ALL.and(condition);
+    }
+
+    /**
+     * @return Criteria of the people that also meet the condition
+     */
+    public PersonCriteria and(Condition condition) {
+        List<Condition> conditions = new ArrayList<>(this.conditions);
+        conditions.add(condition);
+        conditions.sort(CONDITION_ORDER);
+        return new PersonCriteria(List.copyOf(conditions), orderBy, descending, limit);
+    }
+
+    /**
+     * @return Criteria ordered by the field in ascending order, people of equal values by ID
+     */
+    public PersonCriteria orderBy(PersonField<?> field) {
+        return new PersonCriteria(conditions, field, false, limit);
+    }
+
+    /**
+     * @return Criteria ordered by the field in descending order, people of equal values by ID
+     */
+    public PersonCriteria orderByDescending(PersonField<?> field) {
+        return new PersonCriteria(conditions, field, true, limit);
+    }
+
+    /**
+     * @param limit Maximum number of people, greater than 0
+     */
+    public PersonCriteria limit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be greater than 0: " + limit);
+        }
+        return new PersonCriteria(conditions, orderBy, descending, limit);
+    }
+
+    Shape getShape() {
+        return new Shape(getConditionShapes(), orderBy, descending, limit > 0);
+    }
+
+    /**
+     * @return Shape of the criteria without order and limit, which do not change the count
+     */
+    Shape getCountShape() {
+        return new Shape(getConditionShapes(), null, false, false);
+    }
+
+    private List<ConditionShape> getConditionShapes() {
+        List<ConditionShape> conditionShapes = new ArrayList<>(conditions.size());
+        for (Condition condition : conditions) {
+            conditionShapes.add(new ConditionShape(condition.getField(), condition.getOperator(), condition.getParameterCount()));
+        }
+        return List.copyOf(conditionShapes);
+    }
+
+    /**
+     * Binds the values of the conditions, followed by the limit if there is one, in the order of {@link #getShape}.
+     *
+     * @param withLimit false for counting queries, which have no limit
+     */
+    void bind(PreparedStatement preparedStatement, boolean withLimit) throws SQLException {
+        int parameterIndex = 1;
+        for (Condition condition : conditions) {
+            parameterIndex = condition.bind(preparedStatement, parameterIndex);
+        }
+        if (withLimit && limit > 0) {
+            preparedStatement.setInt(parameterIndex, limit);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PersonCriteria" + conditions + (orderBy == null ? "" : " ORDER BY " + orderBy + (descending ? " DESC" : ""))
+                + (limit > 0 ? " LIMIT " + limit : "");
+    }
+
+    /**
+     * Criteria without their values, the key of the SQL of criteria.
+     */
+    record Shape(List<ConditionShape> conditions, PersonField<?> orderBy, boolean descending, boolean limited) {
+
+        /**
+         * @return Query selecting the columns of the people of the shape
+         */
+        String toSelectSql(String columns) {
+            StringBuilder sql = new StringBuilder("SELECT ").append(columns);
+            appendFromAndWhere(sql);
+            sql.append("ORDER BY ");
+            if (orderBy != null && orderBy != PersonField.ID) {
+                sql.append(orderBy.getColumn()).append(descending ? " DESC, " : ", ");
+            }
+            sql.append("PARENT.ID").append(descending && (orderBy == null || orderBy == PersonField.ID) ? " DESC" : "").append('\n');
+            if (limited) {
+                sql.append("FETCH FIRST ? ROWS ONLY\n");
+            }
+            return sql.toString();
+        }
+
+        /**
+         * @return Query counting the people of the shape, without its order and limit
+         */
+        String toCountSql() {
+            StringBuilder sql = new StringBuilder("SELECT COUNT(*) AS COUNT\n");
+            appendFromAndWhere(sql);
+            return sql.toString();
+        }
+
+        private void appendFromAndWhere(StringBuilder sql) {
+            sql.append("FROM PEOPLE AS PARENT\n");
+            Set<String> joins = new LinkedHashSet<>();
+            for (ConditionShape condition : conditions) {
+                if (condition.field().getJoin() != null) {
+                    joins.add(condition.field().getJoin());
+                }
+            }
+            if (orderBy != null && orderBy.getJoin() != null) {
+                joins.add(orderBy.getJoin());
+            }
+            for (String join : joins) {
+                sql.append(join).append('\n');
+            }
+            for (int index = 0; index < conditions.size(); index++) {
+                ConditionShape condition = conditions.get(index);
+                sql.append(index == 0 ? "WHERE " : "AND ")
+                        .append(Condition.toSql(condition.field(), condition.operator(), condition.parameterCount()))
+                        .append('\n');
+            }
+        }
+    }
+
+    record ConditionShape(PersonField<?> field, Condition.Operator operator, int parameterCount) {
+    }
+}
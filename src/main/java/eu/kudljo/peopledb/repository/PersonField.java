@@ -0,0 +1,161 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.Region;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Column of a person, or of its home or business address, that {@link PersonCriteria} can filter and sort by.
+ * Conditions only take values of the type of the field, which are always bound as parameters.
+ *
+ * @param <V> Type of the values of the field
+ */
+public final class PersonField<V> {
+    public static final PersonField<Long> ID = personField("ID", PreparedStatement::setLong);
+    public static final PersonField<String> FIRST_NAME = personField("FIRST_NAME", PreparedStatement::setString);
+    public static final PersonField<String> LAST_NAME = personField("LAST_NAME", PreparedStatement::setString);
+    public static final PersonField<ZonedDateTime> DOB = personField("DOB",
+            (preparedStatement, parameterIndex, dob) -> preparedStatement.setTimestamp(parameterIndex, PeopleRepository.convertDobToTimestamp(dob)));
+    public static final PersonField<BigDecimal> SALARY = personField("SALARY", PreparedStatement::setBigDecimal);
+    public static final PersonField<String> EMAIL = personField("EMAIL", PreparedStatement::setString);
+    public static final PersonField<String> HOME_CITY = homeAddressField("CITY", PreparedStatement::setString);
+    public static final PersonField<String> HOME_STATE = homeAddressField("STATE", PreparedStatement::setString);
+    public static final PersonField<String> HOME_POSTCODE = homeAddressField("POSTCODE", PreparedStatement::setString);
+    public static final PersonField<String> HOME_COUNTRY = homeAddressField("COUNTRY", PreparedStatement::setString);
+    public static final PersonField<Region> HOME_REGION = homeAddressField("REGION",
+            (preparedStatement, parameterIndex, region) -> preparedStatement.setString(parameterIndex, region.toString()));
+    public static final PersonField<String> BUSINESS_CITY = businessAddressField("CITY", PreparedStatement::setString);
+    public static final PersonField<String> BUSINESS_STATE = businessAddressField("STATE", PreparedStatement::setString);
+    public static final PersonField<Region> BUSINESS_REGION = businessAddressField("REGION",
+            (preparedStatement, parameterIndex, region) -> preparedStatement.setString(parameterIndex, region.toString()));
+
+    private static final String HOME_JOIN = "LEFT OUTER JOIN ADDRESSES AS HOME ON PARENT.HOME_ADDRESS = HOME.ID";
+    private static final String BUSINESS_JOIN = "LEFT OUTER JOIN ADDRESSES AS BIZ ON PARENT.BUSINESS_ADDRESS = BIZ.ID";
+
+    private final String name;
+    private final String column;
+    private final String join;
+    private final ParameterBinder<V> parameterBinder;
+
+    private PersonField(String name, String column, String join, ParameterBinder<V> parameterBinder) {
+        this.name = name;
+        this.column = column;
+        this.join = join;
+        this.parameterBinder = parameterBinder;
+    }
+
+    private static <V> PersonField<V> personField(String columnName, ParameterBinder<V> parameterBinder) {
+        return new PersonField<>(columnName, "PARENT." + columnName, null, parameterBinder);
+    }
+
+    private static <V> PersonField<V> homeAddressField(String columnName, ParameterBinder<V> parameterBinder) {
+        return new PersonField<>("HOME_" + columnName, "HOME." + columnName, HOME_JOIN, parameterBinder);
+    }
+
+    private static <V> PersonField<V> businessAddressField(String columnName, ParameterBinder<V> parameterBinder) {
+        return new PersonField<>("BUSINESS_" + columnName, "BIZ." + columnName, BUSINESS_JOIN, parameterBinder);
+    }
+
+    public Condition eq(V value) {
+        return condition(Condition.Operator.EQ, value);
+    }
+
+    public Condition ne(V value) {
+        return condition(Condition.Operator.NE, value);
+    }
+
+    public Condition lt(V value) {
+        return condition(Condition.Operator.LT, value);
+    }
+
+    public Condition le(V value) {
+        return condition(Condition.Operator.LE, value);
+    }
+
+    public Condition gt(V value) {
+        return condition(Condition.Operator.GT, value);
+    }
+
+    public Condition ge(V value) {
+        return condition(Condition.Operator.GE, value);
+    }
+
+    /**
+     * @return Condition of values from {@code from} to {@code to}, both inclusive
+     */
+    public Condition between(V from, V to) {
+        return condition(Condition.Operator.BETWEEN, from, to);
+    }
+
+    /**
+     * @param values At most {@link CRUDRepository#MAX_IN_LIST_SIZE} values
+     */
+    public Condition in(Collection<V> values) {
+        if (values.isEmpty() || values.size() > CRUDRepository.MAX_IN_LIST_SIZE) {
+            throw new IllegalArgumentException("IN condition needs 1 to %d values".formatted(CRUDRepository.MAX_IN_LIST_SIZE));
+        }
+        return condition(Condition.Operator.IN, values.toArray());
+    }
+
+    /**
+     * @param pattern SQL LIKE pattern, e.g. {@code "Sm%"}, for text fields
+     */
+    public Condition like(String pattern) {
+        return condition(Condition.Operator.LIKE, pattern);
+    }
+
+    public Condition isNull() {
+        return condition(Condition.Operator.IS_NULL);
+    }
+
+    public Condition isNotNull() {
+        return condition(Condition.Operator.IS_NOT_NULL);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a value is null, which SQL never matches by comparison
+     */
+    private Condition condition(Condition.Operator operator, Object... values) {
+        for (Object value : values) {
+            if (value == null) {
+                throw new IllegalArgumentException("Value of %s must not be null, use isNull()".formatted(name));
+            }
+        }
+        return new Condition(this, operator, List.of(values));
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getColumn() {
+        return column;
+    }
+
+    /**
+     * @return Join of the table of the column, or null for columns of PEOPLE
+     */
+    String getJoin() {
+        return join;
+    }
+
+    @SuppressWarnings("unchecked")
+    void bind(PreparedStatement preparedStatement, int parameterIndex, Object value) throws SQLException {
+        parameterBinder.bind(preparedStatement, parameterIndex, (V) value);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder<V> {
+        void bind(PreparedStatement preparedStatement, int parameterIndex, V value) throws SQLException;
+    }
+}
@@ -0,0 +1,225 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.Address;
+import eu.kudljo.peopledb.model.Person;
+import eu.kudljo.peopledb.model.Region;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Row mapper of the person queries of {@link PeopleRepository}, compiled once per query shape:
+ * the column index of each alias is resolved from the result set metadata when the mapper is created,
+ * rows are then read by index with typed getters. Columns missing from the query are skipped.
+ * <p>
+ * Immutable, so one mapper can be shared by all threads running the same query.
+ */
+final class PersonRowMapper implements RowMapper<Person> {
+    private static final ZoneId DOB_ZONE = ZoneId.of("+0");
+    private static final EnumLookup<Region> REGIONS = EnumLookup.of(Region.class);
+    private static final int MISSING = 0;
+
+    private final PersonColumns parent;
+    private final PersonColumns child;
+    private final PersonColumns spouse;
+    private final AddressColumns homeAddress;
+    private final AddressColumns businessAddress;
+
+    PersonRowMapper(ResultSetMetaData metaData) throws SQLException {
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        for (int columnIndex = 1; columnIndex <= metaData.getColumnCount(); columnIndex++) {
+            columnIndexes.putIfAbsent(metaData.getColumnLabel(columnIndex), columnIndex);
+        }
+        parent = new PersonColumns(columnIndexes, "PARENT_");
+        child = new PersonColumns(columnIndexes, "CHILD_");
+        spouse = new PersonColumns(columnIndexes, "S_");
+        homeAddress = new AddressColumns(columnIndexes, "HOME_");
+        businessAddress = new AddressColumns(columnIndexes, "BIZ_");
+    }
+
+    /**
+     * @return Person of the {@code PARENT_} columns
+     */
+    @Override
+    public Person mapRow(ResultSet resultSet) throws SQLException {
+        return mapPerson(resultSet, parent, null).orElseThrow();
+    }
+
+    /**
+     * @return {@link LazyPerson} of the {@code PARENT_} columns, whose associations are loaded by the repository
+     * from the IDs of {@link #mapReferences}
+     */
+    Person mapLazyRow(ResultSet resultSet, PeopleRepository peopleRepository) throws SQLException {
+        return mapPerson(resultSet, parent, peopleRepository).orElseThrow();
+    }
+
+    /**
+     * @return IDs of the rows the {@code PARENT_} person refers to, null for the columns missing from the query
+     */
+    PersonReferences mapReferences(ResultSet resultSet) throws SQLException {
+        return mapReferences(resultSet, parent);
+    }
+
+    Optional<Person> mapChild(ResultSet resultSet) throws SQLException {
+        return mapPerson(resultSet, child, null);
+    }
+
+    Optional<Person> mapSpouse(ResultSet resultSet) throws SQLException {
+        return mapPerson(resultSet, spouse, null);
+    }
+
+    Address mapHomeAddress(ResultSet resultSet) throws SQLException {
+        return mapAddress(resultSet, homeAddress);
+    }
+
+    Address mapBusinessAddress(ResultSet resultSet) throws SQLException {
+        return mapAddress(resultSet, businessAddress);
+    }
+
+    /**
+     * @param peopleRepository Repository loading the associations of a {@link LazyPerson}, or null for a plain person
+     */
+    private static Optional<Person> mapPerson(ResultSet resultSet, PersonColumns columns, PeopleRepository peopleRepository) throws SQLException {
+        if (columns.id == MISSING) {
+            return Optional.empty();
+        }
+        long personId = resultSet.getLong(columns.id);
+        if (resultSet.wasNull()) {
+            return Optional.empty();
+        }
+        Session session = Session.current();
+        Person managedPerson = session == null ? null : session.find(Person.class, personId);
+        if (managedPerson != null) {
+            return Optional.of(managedPerson);
+        }
+        String firstName = getString(resultSet, columns.firstName);
+        String lastName = getString(resultSet, columns.lastName);
+        Timestamp dob = columns.dob == MISSING ? null : resultSet.getTimestamp(columns.dob);
+        BigDecimal salary = columns.salary == MISSING ? null : resultSet.getBigDecimal(columns.salary);
+        ZonedDateTime zonedDob = dob == null ? null : ZonedDateTime.of(dob.toLocalDateTime(), DOB_ZONE);
+        Person person = peopleRepository == null
+                ? new Person(personId, firstName, lastName, zonedDob, salary)
+                : new LazyPerson(personId, firstName, lastName, zonedDob, salary, peopleRepository, mapReferences(resultSet, columns));
+        if (columns.email != MISSING) {
+            person.setEmail(resultSet.getString(columns.email));
+        }
+        person.markClean();
+        if (session != null) {
+            session.register(person, personId);
+        }
+        return Optional.of(person);
+    }
+
+    private static PersonReferences mapReferences(ResultSet resultSet, PersonColumns columns) throws SQLException {
+        return new PersonReferences(
+                getId(resultSet, columns.homeAddress),
+                getId(resultSet, columns.businessAddress),
+                getId(resultSet, columns.spouse),
+                getId(resultSet, columns.parentId));
+    }
+
+    private static Address mapAddress(ResultSet resultSet, AddressColumns columns) throws SQLException {
+        if (columns.id == MISSING) {
+            return null;
+        }
+        long addressId = resultSet.getLong(columns.id);
+        if (resultSet.wasNull()) {
+            return null;
+        }
+        Session session = Session.current();
+        Address managedAddress = session == null ? null : session.find(Address.class, addressId);
+        if (managedAddress != null) {
+            return managedAddress;
+        }
+        Address address = new Address(addressId,
+                getString(resultSet, columns.streetAddress),
+                getString(resultSet, columns.address2),
+                getString(resultSet, columns.city),
+                getString(resultSet, columns.state),
+                getString(resultSet, columns.postcode),
+                getString(resultSet, columns.country),
+                getString(resultSet, columns.county),
+                toRegion(getString(resultSet, columns.region)));
+        if (session != null) {
+            session.register(address, addressId);
+        }
+        return address;
+    }
+
+    private static Long getId(ResultSet resultSet, int columnIndex) throws SQLException {
+        if (columnIndex == MISSING) {
+            return null;
+        }
+        long id = resultSet.getLong(columnIndex);
+        return resultSet.wasNull() ? null : id;
+    }
+
+    private static String getString(ResultSet resultSet, int columnIndex) throws SQLException {
+        return columnIndex == MISSING ? null : resultSet.getString(columnIndex);
+    }
+
+    static Region toRegion(String value) {
+        return REGIONS.valueOf(value);
+    }
+
+    record PersonReferences(Long homeAddressId, Long businessAddressId, Long spouseId, Long parentId) {
+    }
+
+    private static final class PersonColumns {
+        private final int id;
+        private final int firstName;
+        private final int lastName;
+        private final int dob;
+        private final int salary;
+        private final int email;
+        private final int homeAddress;
+        private final int businessAddress;
+        private final int spouse;
+        private final int parentId;
+
+        PersonColumns(Map<String, Integer> columnIndexes, String aliasPrefix) {
+            id = columnIndexes.getOrDefault(aliasPrefix + "ID", MISSING);
+            firstName = columnIndexes.getOrDefault(aliasPrefix + "FIRST_NAME", MISSING);
+            lastName = columnIndexes.getOrDefault(aliasPrefix + "LAST_NAME", MISSING);
+            dob = columnIndexes.getOrDefault(aliasPrefix + "DOB", MISSING);
+            salary = columnIndexes.getOrDefault(aliasPrefix + "SALARY", MISSING);
+            email = columnIndexes.getOrDefault(aliasPrefix + "EMAIL", MISSING);
+            homeAddress = columnIndexes.getOrDefault(aliasPrefix + "HOME_ADDRESS", MISSING);
+            businessAddress = columnIndexes.getOrDefault(aliasPrefix + "BUSINESS_ADDRESS", MISSING);
+            spouse = columnIndexes.getOrDefault(aliasPrefix + "SPOUSE", MISSING);
+            parentId = columnIndexes.getOrDefault(aliasPrefix + "PARENT_ID", MISSING);
+        }
+    }
+
+    private static final class AddressColumns {
+        private final int id;
+        private final int streetAddress;
+        private final int address2;
+        private final int city;
+        private final int state;
+        private final int postcode;
+        private final int county;
+        private final int region;
+        private final int country;
+
+        AddressColumns(Map<String, Integer> columnIndexes, String aliasPrefix) {
+            id = columnIndexes.getOrDefault(aliasPrefix + "ID", MISSING);
+            streetAddress = columnIndexes.getOrDefault(aliasPrefix + "STREET_ADDRESS", MISSING);
+            address2 = columnIndexes.getOrDefault(aliasPrefix + "ADDRESS2", MISSING);
+            city = columnIndexes.getOrDefault(aliasPrefix + "CITY", MISSING);
+            state = columnIndexes.getOrDefault(aliasPrefix + "STATE", MISSING);
+            postcode = columnIndexes.getOrDefault(aliasPrefix + "POSTCODE", MISSING);
+            county = columnIndexes.getOrDefault(aliasPrefix + "COUNTY", MISSING);
+            region = columnIndexes.getOrDefault(aliasPrefix + "REGION", MISSING);
+            country = columnIndexes.getOrDefault(aliasPrefix + "COUNTRY", MISSING);
+        }
+    }
+}
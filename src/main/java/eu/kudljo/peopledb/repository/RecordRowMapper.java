@@ -0,0 +1,145 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.annotation.Projection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Row mapper of a record projection, compiled once per query shape like {@link PersonRowMapper}:
+ * each record component is bound to the column of the same name in upper snake case when the mapper is created,
+ * e.g. {@code lastName} to {@code LAST_NAME}, rows then only call one typed getter per component
+ * and the canonical constructor. Primitive components read SQL NULL as 0 or false.
+ * <p>
+ * Immutable, so one mapper can be shared by all threads running the same query.
+ */
+final class RecordRowMapper<R> implements RowMapper<R> {
+    private static final ZoneId TIMESTAMP_ZONE = ZoneId.of("+0");
+
+    private final Class<R> recordClass;
+    private final ColumnReader[] columnReaders;
+    private final MethodHandle constructor;
+
+    RecordRowMapper(Class<R> recordClass, ResultSetMetaData metaData) throws SQLException {
+        if (!recordClass.isRecord()) {
+            throw new IllegalArgumentException(recordClass.getName() + " is not a record");
+        }
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        for (int columnIndex = 1; columnIndex <= metaData.getColumnCount(); columnIndex++) {
+            columnIndexes.putIfAbsent(metaData.getColumnLabel(columnIndex).toUpperCase(), columnIndex);
+        }
+        RecordComponent[] components = recordClass.getRecordComponents();
+        columnReaders = new ColumnReader[components.length];
+        for (int index = 0; index < components.length; index++) {
+            String columnName = toColumnName(components[index].getName());
+            Integer columnIndex = columnIndexes.get(columnName);
+            if (columnIndex == null) {
+                throw new IllegalArgumentException("Query of %s has no column %s for component %s"
+                        .formatted(recordClass.getName(), columnName, components[index].getName()));
+            }
+            columnReaders[index] = createColumnReader(components[index].getType(), columnIndex);
+        }
+        this.recordClass = recordClass;
+        this.constructor = findConstructor(recordClass, components);
+    }
+
+    @Override
+    public R mapRow(ResultSet resultSet) throws SQLException {
+        Object[] values = new Object[columnReaders.length];
+        for (int index = 0; index < columnReaders.length; index++) {
+            values[index] = columnReaders[index].read(resultSet);
+        }
+        try {
+            return recordClass.cast(constructor.invoke(values));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to create " + recordClass.getName(), e);
+        }
+    }
+
+    /**
+     * @return SQL of the {@link Projection} annotation of the record
+     */
+    static String getProjectionSql(Class<?> recordClass) {
+        Projection projection = recordClass.getAnnotation(Projection.class);
+        if (projection == null) {
+            throw new IllegalArgumentException(recordClass.getName() + " has no @Projection annotation");
+        }
+        return projection.value();
+    }
+
+    /**
+     * @return {@code lastName} as {@code LAST_NAME}
+     */
+    static String toColumnName(String componentName) {
+        StringBuilder columnName = new StringBuilder(componentName.length() + 4);
+        for (int index = 0; index < componentName.length(); index++) {
+            char character = componentName.charAt(index);
+            if (Character.isUpperCase(character) && index > 0) {
+                columnName.append('_');
+            }
+            columnName.append(Character.toUpperCase(character));
+        }
+        return columnName.toString();
+    }
+
+    private static MethodHandle findConstructor(Class<?> recordClass, RecordComponent[] components) {
+        Class<?>[] parameterTypes = Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(recordClass, MethodHandles.lookup());
+            return lookup.findConstructor(recordClass, MethodType.methodType(void.class, parameterTypes))
+                    .asSpreader(Object[].class, parameterTypes.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Unable to access canonical constructor of " + recordClass.getName(), e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ColumnReader createColumnReader(Class<?> type, int columnIndex) {
+        if (type == long.class) {
+            return resultSet -> resultSet.getLong(columnIndex);
+        } else if (type == int.class) {
+            return resultSet -> resultSet.getInt(columnIndex);
+        } else if (type == double.class) {
+            return resultSet -> resultSet.getDouble(columnIndex);
+        } else if (type == boolean.class) {
+            return resultSet -> resultSet.getBoolean(columnIndex);
+        } else if (type == String.class) {
+            return resultSet -> resultSet.getString(columnIndex);
+        } else if (type == BigDecimal.class) {
+            return resultSet -> resultSet.getBigDecimal(columnIndex);
+        } else if (type == ZonedDateTime.class) {
+            return resultSet -> {
+                Timestamp timestamp = resultSet.getTimestamp(columnIndex);
+                return timestamp == null ? null : ZonedDateTime.of(timestamp.toLocalDateTime(), TIMESTAMP_ZONE);
+            };
+        } else if (type.isEnum()) {
+            return resultSet -> {
+                String name = resultSet.getString(columnIndex);
+                return name == null ? null : Enum.valueOf((Class<? extends Enum>) type, name.toUpperCase());
+            };
+        } else if (type.isPrimitive()) {
+            throw new IllegalArgumentException("Unsupported primitive record component type " + type);
+        }
+        return resultSet -> resultSet.getObject(columnIndex, type);
+    }
+
+    @FunctionalInterface
+    private interface ColumnReader {
+        Object read(ResultSet resultSet) throws SQLException;
+    }
+}
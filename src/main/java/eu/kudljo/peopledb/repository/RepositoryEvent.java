@@ -0,0 +1,25 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.CrudOperation;
+
+/**
+ * One completed or failed repository operation.
+ *
+ * @param sql          SQL of the operation; IN-list operations report it with its {@code (:ids)} parameter
+ * @param bindCount    Parameters bound over all statements of the operation, IN lists padded as executed
+ * @param rowCount     Rows returned or affected
+ * @param elapsedNanos Time from the start of the operation until it completed, for streams until they were closed
+ * @param error        Exception the operation failed with, or null
+ */
+public record RepositoryEvent(Class<?> repositoryClass,
+                              CrudOperation operation,
+                              String sql,
+                              int bindCount,
+                              long rowCount,
+                              long elapsedNanos,
+                              Exception error) {
+
+    public boolean failed() {
+        return error != null;
+    }
+}
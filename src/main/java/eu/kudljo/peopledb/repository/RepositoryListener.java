@@ -0,0 +1,13 @@
+package eu.kudljo.peopledb.repository;
+
+/**
+ * Receives an event after each operation of a repository it is set on, see {@link CRUDRepository#setRepositoryListener}.
+ * <p>
+ * It is called on the thread that ran the operation, with its connection still leased,
+ * so it should only record the event and return quickly. It must be thread safe.
+ */
+@FunctionalInterface
+public interface RepositoryListener {
+
+    void onOperation(RepositoryEvent event);
+}
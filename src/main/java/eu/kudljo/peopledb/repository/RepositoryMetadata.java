@@ -0,0 +1,56 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.annotation.MultiSQL;
+import eu.kudljo.peopledb.annotation.SQL;
+import eu.kudljo.peopledb.model.CrudOperation;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * SQL declared by {@link SQL} annotations of a repository class, resolved once per class.
+ * Repositories compiled with the annotation processor read it from {@link GeneratedMetadata}, others scan their methods.
+ */
+final class RepositoryMetadata {
+    private static final ClassValue<RepositoryMetadata> METADATA = new ClassValue<>() {
+        @Override
+        protected RepositoryMetadata computeValue(Class<?> repositoryClass) {
+            return new RepositoryMetadata(repositoryClass);
+        }
+    };
+
+    private final Map<CrudOperation, String> sqlByOperation;
+
+    private RepositoryMetadata(Class<?> repositoryClass) {
+        Map<CrudOperation, String> generatedSqlByOperation = GeneratedMetadata.getSqlByOperation(repositoryClass);
+        this.sqlByOperation = generatedSqlByOperation != null ? generatedSqlByOperation : scanSqlAnnotations(repositoryClass);
+    }
+
+    private static Map<CrudOperation, String> scanSqlAnnotations(Class<?> repositoryClass) {
+        Map<CrudOperation, String> sqlByOperation = new EnumMap<>(CrudOperation.class);
+        Method[] methods = repositoryClass.getDeclaredMethods();
+        // repeated annotations first, the first declaration of an operation wins
+        Arrays.stream(methods)
+                .filter(method -> method.isAnnotationPresent(MultiSQL.class))
+                .flatMap(method -> Arrays.stream(method.getAnnotation(MultiSQL.class).value()))
+                .forEach(sql -> sqlByOperation.putIfAbsent(sql.operationType(), sql.value()));
+        Arrays.stream(methods)
+                .filter(method -> method.isAnnotationPresent(SQL.class))
+                .map(method -> method.getAnnotation(SQL.class))
+                .forEach(sql -> sqlByOperation.putIfAbsent(sql.operationType(), sql.value()));
+        return Collections.unmodifiableMap(sqlByOperation);
+    }
+
+    static RepositoryMetadata of(Class<?> repositoryClass) {
+        return METADATA.get(repositoryClass);
+    }
+
+    String getSql(CrudOperation operationType, Supplier<String> sqlGetter) {
+        String sql = sqlByOperation.get(operationType);
+        return sql != null ? sql : sqlGetter.get();
+    }
+}
@@ -0,0 +1,12 @@
+package eu.kudljo.peopledb.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set. Must not move the cursor.
+ */
+@FunctionalInterface
+public interface RowMapper<R> {
+    R mapRow(ResultSet resultSet) throws SQLException;
+}
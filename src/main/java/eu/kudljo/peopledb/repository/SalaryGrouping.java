@@ -0,0 +1,62 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.Region;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Column the salaries of {@link PeopleRepository#getSalaryStats(SalaryGrouping)} are grouped by,
+ * with the type of its values. The query of each grouping is built once.
+ *
+ * @param <K> Type of the group keys, null is the group of people without a value
+ */
+public final class SalaryGrouping<K> {
+    public static final SalaryGrouping<Integer> DOB_YEAR = new SalaryGrouping<>(
+            "EXTRACT(YEAR FROM PARENT.DOB)", "", (resultSet, columnIndex) -> {
+                int year = resultSet.getInt(columnIndex);
+                return resultSet.wasNull() ? null : year;
+            });
+    public static final SalaryGrouping<Region> HOME_REGION = new SalaryGrouping<>(
+            "HOME.REGION", "LEFT OUTER JOIN ADDRESSES AS HOME ON PARENT.HOME_ADDRESS = HOME.ID",
+            (resultSet, columnIndex) -> PersonRowMapper.toRegion(resultSet.getString(columnIndex)));
+    public static final SalaryGrouping<Region> BUSINESS_REGION = new SalaryGrouping<>(
+            "BIZ.REGION", "LEFT OUTER JOIN ADDRESSES AS BIZ ON PARENT.BUSINESS_ADDRESS = BIZ.ID",
+            (resultSet, columnIndex) -> PersonRowMapper.toRegion(resultSet.getString(columnIndex)));
+
+    static final String SALARY_AGGREGATES = """
+            COUNT(*) AS HEADCOUNT, SUM(PARENT.SALARY) AS TOTAL, AVG(PARENT.SALARY) AS AVERAGE,
+            MIN(PARENT.SALARY) AS MINIMUM, MAX(PARENT.SALARY) AS MAXIMUM,
+            PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY PARENT.SALARY) AS MEDIAN,
+            PERCENTILE_CONT(0.9) WITHIN GROUP (ORDER BY PARENT.SALARY) AS P90
+            """;
+
+    private final String sql;
+    private final KeyReader<K> keyReader;
+
+    private SalaryGrouping(String keyExpression, String join, KeyReader<K> keyReader) {
+        this.sql = "SELECT " + keyExpression + " AS GROUP_KEY, " + SALARY_AGGREGATES + """
+                FROM PEOPLE AS PARENT
+                %s
+                GROUP BY %s
+                ORDER BY %s
+                """.formatted(join, keyExpression, keyExpression);
+        this.keyReader = keyReader;
+    }
+
+    /**
+     * @return SQL selecting the group key as the first column, followed by {@link #SALARY_AGGREGATES}
+     */
+    String getSql() {
+        return sql;
+    }
+
+    K readKey(ResultSet resultSet, int columnIndex) throws SQLException {
+        return keyReader.read(resultSet, columnIndex);
+    }
+
+    @FunctionalInterface
+    private interface KeyReader<K> {
+        K read(ResultSet resultSet, int columnIndex) throws SQLException;
+    }
+}
@@ -0,0 +1,100 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.Person;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Identity map of the entities saved or loaded by the current thread while the session is open:
+ * <ul>
+ *     <li>loading an ID that is already in the session returns the same instance instead of a new copy,</li>
+ *     <li>saving an entity that is already in the session is skipped, so shared addresses or spouses
+ *     of a family graph are inserted once.</li>
+ * </ul>
+ * Open it around a unit of work with try-with-resources. Opening a session while one is open
+ * joins it, the session ends when the outermost one is closed. Not meant to be shared between threads.
+ */
+public final class Session implements AutoCloseable {
+    private static final ThreadLocal<Session> CURRENT_SESSION = new ThreadLocal<>();
+
+    private final Map<Class<?>, Map<Long, Object>> entitiesByClass = new HashMap<>();
+    private final Set<Object> managedEntities = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int openCount = 1;
+
+    private Session() {
+    }
+
+    public static Session open() {
+        Session session = CURRENT_SESSION.get();
+        if (session != null) {
+            session.openCount++;
+            return session;
+        }
+        session = new Session();
+        CURRENT_SESSION.set(session);
+        return session;
+    }
+
+    /**
+     * @return Session of the current thread, or null if none is open
+     */
+    static Session current() {
+        return CURRENT_SESSION.get();
+    }
+
+    <E> E find(Class<E> entityClass, Long id) {
+        Map<Long, Object> entities = entitiesByClass.get(entityClass);
+        return entities == null ? null : entityClass.cast(entities.get(id));
+    }
+
+    boolean isManaged(Object entity) {
+        return managedEntities.contains(entity);
+    }
+
+    /**
+     * Marks an entity whose ID is not known yet, e.g. while it is being saved.
+     */
+    void manage(Object entity) {
+        managedEntities.add(entity);
+    }
+
+    void register(Object entity, Long id) {
+        managedEntities.add(entity);
+        entitiesByClass.computeIfAbsent(getEntityClass(entity), entityClass -> new HashMap<>()).put(id, entity);
+    }
+
+    void evict(Object entity, Long id) {
+        managedEntities.remove(entity);
+        Map<Long, Object> entities = entitiesByClass.get(getEntityClass(entity));
+        if (entities != null) {
+            entities.remove(id);
+        }
+    }
+
+    /**
+     * @return Class the entity is identified by, i.e. {@link Person} for a {@link LazyPerson}
+     */
+    static Class<?> getEntityClass(Object entity) {
+        return entity instanceof LazyPerson ? Person.class : entity.getClass();
+    }
+
+    public int size() {
+        return managedEntities.size();
+    }
+
+    public void clear() {
+        entitiesByClass.clear();
+        managedEntities.clear();
+    }
+
+    @Override
+    public void close() {
+        if (--openCount == 0) {
+            CURRENT_SESSION.remove();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.model.CrudOperation;
+
+import java.time.Instant;
+
+/**
+ * Operation that took at least the slow query threshold of an {@link InMemoryRepositoryMetrics}.
+ *
+ * @param completedAt When the operation completed or failed
+ */
+public record SlowQuery(Instant completedAt,
+                        Class<?> repositoryClass,
+                        CrudOperation operation,
+                        String sql,
+                        int bindCount,
+                        long rowCount,
+                        long elapsedNanos,
+                        boolean failed) {
+}
@@ -0,0 +1,126 @@
+package eu.kudljo.peopledb.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of prepared statements of one connection, keyed by SQL text and statement options.
+ * Cached statements are owned by the cache: callers must not close them, only their result sets.
+ * The least recently used statement is closed when the cache is full.
+ * <p>
+ * Not thread-safe, a cache is only used by the thread that currently leases its connection.
+ */
+final class StatementCache implements AutoCloseable {
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final Connection connection;
+    private final Map<Key, PreparedStatement> statements;
+    private final LongAdder hitCount;
+    private final LongAdder missCount;
+
+    /**
+     * @param hitCount  Counter shared by the caches of all connections of a repository
+     * @param missCount Counter shared by the caches of all connections of a repository
+     */
+    StatementCache(Connection connection, int capacity, LongAdder hitCount, LongAdder missCount) {
+        this.connection = connection;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(new Key(sql, ResultSet.TYPE_FORWARD_ONLY, Statement.NO_GENERATED_KEYS, List.of()));
+    }
+
+    PreparedStatement prepareScrollable(String sql) throws SQLException {
+        return prepare(new Key(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, Statement.NO_GENERATED_KEYS, List.of()));
+    }
+
+    PreparedStatement prepareReturningGeneratedKeys(String sql) throws SQLException {
+        return prepare(new Key(sql, ResultSet.TYPE_FORWARD_ONLY, Statement.RETURN_GENERATED_KEYS, List.of()));
+    }
+
+    /**
+     * @param columnNames Columns returned by {@link PreparedStatement#getGeneratedKeys()} for each affected row,
+     *                    also of rows that were updated rather than inserted
+     */
+    PreparedStatement prepareReturningColumns(String sql, String... columnNames) throws SQLException {
+        return prepare(new Key(sql, ResultSet.TYPE_FORWARD_ONLY, Statement.RETURN_GENERATED_KEYS, List.of(columnNames)));
+    }
+
+    private PreparedStatement prepare(Key key) throws SQLException {
+        PreparedStatement statement = statements.get(key);
+        if (statement != null && !statement.isClosed()) {
+            hitCount.increment();
+            return statement;
+        }
+        missCount.increment();
+        if (!key.columnNames().isEmpty()) {
+            statement = connection.prepareStatement(key.sql(), key.columnNames().toArray(new String[0]));
+        } else if (key.autoGeneratedKeys() == Statement.RETURN_GENERATED_KEYS) {
+            statement = connection.prepareStatement(key.sql(), Statement.RETURN_GENERATED_KEYS);
+        } else {
+            statement = connection.prepareStatement(key.sql(), key.resultSetType(), ResultSet.CONCUR_READ_ONLY);
+        }
+        statements.put(key, statement);
+        return statement;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        List<PreparedStatement> cachedStatements = new ArrayList<>(statements.values());
+        statements.clear();
+        SQLException exception = null;
+        for (PreparedStatement statement : cachedStatements) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private record Key(String sql, int resultSetType, int autoGeneratedKeys, List<String> columnNames) {
+    }
+}
@@ -0,0 +1,25 @@
+package eu.kudljo.peopledb.repository;
+
+/**
+ * Snapshot of the state of a {@link WriteBehindRepository}.
+ *
+ * @param queueDepth        Mutations waiting to be flushed
+ * @param flushCount        Transactions committed or rolled back by the flusher
+ * @param flushedOperations Mutations committed
+ * @param failedOperations  Mutations rolled back because their flush failed
+ */
+public record WriteBehindMetrics(int queueDepth,
+                                 long flushCount,
+                                 long flushedOperations,
+                                 long failedOperations,
+                                 long totalFlushNanos,
+                                 long maxFlushNanos) {
+
+    public double averageFlushNanos() {
+        return flushCount == 0 ? 0 : (double) totalFlushNanos / flushCount;
+    }
+
+    public double averageOperationsPerFlush() {
+        return flushCount == 0 ? 0 : (double) (flushedOperations + failedOperations) / flushCount;
+    }
+}
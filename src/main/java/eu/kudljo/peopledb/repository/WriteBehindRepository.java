@@ -0,0 +1,303 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.exception.DataException;
+import eu.kudljo.peopledb.model.Person;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind buffer of a repository with group commit. {@link #save}, {@link #update} and {@link #delete}
+ * only queue the mutation, a flusher thread writes the queued mutations in JDBC batches and commits them
+ * in one transaction, either when {@code flushOperations} mutations are pending or {@code flushInterval}
+ * after the first of them, whichever comes first. One commit thus covers many mutations.
+ * <p>
+ * Each call returns a future completed once its mutation is committed, or completed exceptionally
+ * if its flush was rolled back. Entities saved by a rolled back flush get back the ID they had before it,
+ * the entities saved along with them, e.g. the addresses of a person, keep their generated IDs.
+ * The queue is bounded: when it is full, callers block until the flusher catches up.
+ * If the flusher thread fails, the mutations it has not written and all later ones fail with a {@link DataException}.
+ * Mutations are written in the order they were queued. Until then, the repository does not see them.
+ * <p>
+ * The flusher commits on a connection of its own, so the repository must be backed by a {@code DataSource}:
+ * on the single connection of a caller, a flush would commit or roll back the caller's pending work.
+ */
+public class WriteBehindRepository<T> implements AutoCloseable {
+    private static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+    // callers waiting for room in the queue recheck the flusher this often
+    private static final long QUEUE_WAIT_MILLIS = 100;
+
+    private final CRUDRepository<T> repository;
+    private final BlockingQueue<Mutation<T>> queue;
+    private final int flushOperations;
+    private final long flushIntervalNanos;
+    private final Thread flusher;
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushedOperations = new LongAdder();
+    private final LongAdder failedOperations = new LongAdder();
+    private final LongAdder totalFlushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    // mutations are queued under the read lock and CLOSE under the write lock, so none is queued behind CLOSE
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private CompletableFuture<Void> stopped;
+    private volatile Throwable flusherFailure;
+
+    /**
+     * @param maxQueueSize    Mutations queued before callers block
+     * @param flushOperations Pending mutations that trigger a flush
+     * @param flushInterval   Longest time a mutation waits for its flush
+     * @throws IllegalArgumentException if the repository shares a single connection with its caller
+     */
+    public static WriteBehindRepository<Person> of(PeopleRepository peopleRepository, int maxQueueSize,
+                                                   int flushOperations, Duration flushInterval) {
+        return new WriteBehindRepository<>(peopleRepository, maxQueueSize, flushOperations, flushInterval);
+    }
+
+    /**
+     * @param maxQueueSize    Mutations queued before callers block
+     * @param flushOperations Pending mutations that trigger a flush
+     * @param flushInterval   Longest time a mutation waits for its flush
+     * @throws IllegalArgumentException if the repository shares a single connection with its caller
+     */
+    WriteBehindRepository(CRUDRepository<T> repository, int maxQueueSize, int flushOperations, Duration flushInterval) {
+        if (maxQueueSize < 1 || flushOperations < 1 || flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("Queue size, flush operations and flush interval must be greater than 0");
+        }
+        if (repository.getConnectionProvider() instanceof ConnectionProvider.SingleConnectionProvider) {
+            throw new IllegalArgumentException("Write-behind needs a repository with its own connections, not a single shared one");
+        }
+        this.repository = repository;
+        this.queue = new ArrayBlockingQueue<>(maxQueueSize);
+        this.flushOperations = flushOperations;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.flusher = new Thread(this::runFlusher, "write-behind-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public CompletableFuture<Void> save(T entity) {
+        return enqueue(MutationType.SAVE, entity);
+    }
+
+    public CompletableFuture<Void> update(T entity) {
+        return enqueue(MutationType.UPDATE, entity);
+    }
+
+    public CompletableFuture<Void> delete(T entity) {
+        return enqueue(MutationType.DELETE, entity);
+    }
+
+    /**
+     * Blocks until all mutations queued before the call are committed or rolled back.
+     */
+    public void flush() {
+        enqueue(MutationType.FLUSH, null).join();
+    }
+
+    public WriteBehindMetrics getMetrics() {
+        return new WriteBehindMetrics(queue.size(), flushCount.sum(), flushedOperations.sum(), failedOperations.sum(),
+                totalFlushNanos.sum(), maxFlushNanos.get());
+    }
+
+    /**
+     * Flushes the queued mutations and stops the flusher, waiting at most 30 seconds.
+     * The repository stays open, it is owned by the caller.
+     *
+     * @throws DataException if the flusher failed or did not stop in time
+     */
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT);
+    }
+
+    /**
+     * Flushes the queued mutations and stops the flusher. The repository stays open, it is owned by the caller.
+     *
+     * @param timeout Longest time to wait for the flusher to stop
+     * @throws DataException if the flusher failed or did not stop in time
+     */
+    public void close(Duration timeout) {
+        CompletableFuture<Void> stopped;
+        closeLock.writeLock().lock();
+        try {
+            if (this.stopped == null) {
+                this.stopped = put(MutationType.CLOSE, null);
+            }
+            stopped = this.stopped;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            stopped.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw new DataException("Unable to close write-behind repository", e.getCause());
+        } catch (TimeoutException e) {
+            throw new DataException("Write-behind flusher did not stop within " + timeout, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataException("Interrupted while closing write-behind repository", e);
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(MutationType type, T entity) {
+        closeLock.readLock().lock();
+        try {
+            if (stopped != null) {
+                throw new IllegalStateException("Write-behind repository is closed");
+            }
+            return put(type, entity);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private CompletableFuture<Void> put(MutationType type, T entity) {
+        Mutation<T> mutation = new Mutation<>(type, entity, new CompletableFuture<>());
+        boolean queued = false;
+        try {
+            while (!queued && flusherFailure == null) {
+                queued = queue.offer(mutation, QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataException("Interrupted while queueing " + type, e);
+        }
+        if (flusherFailure != null) {
+            // the flusher fails the queue after recording its failure, this mutation may have been queued after that
+            mutation.completion().completeExceptionally(flusherStopped());
+            failQueued();
+        }
+        return mutation.completion();
+    }
+
+    private void runFlusher() {
+        List<Mutation<T>> pending = new ArrayList<>(flushOperations);
+        long flushDeadline = 0;
+        try {
+            while (true) {
+                Mutation<T> mutation = pending.isEmpty()
+                        ? queue.take()
+                        : queue.poll(flushDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (mutation == null) {
+                    flush(pending);
+                } else if (mutation.type() == MutationType.FLUSH || mutation.type() == MutationType.CLOSE) {
+                    flush(pending);
+                    mutation.completion().complete(null);
+                    if (mutation.type() == MutationType.CLOSE) {
+                        return;
+                    }
+                } else {
+                    if (pending.isEmpty()) {
+                        flushDeadline = System.nanoTime() + flushIntervalNanos;
+                    }
+                    pending.add(mutation);
+                    if (pending.size() >= flushOperations) {
+                        flush(pending);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop(pending, e);
+        } catch (RuntimeException | Error e) {
+            stop(pending, e);
+            throw e;
+        }
+    }
+
+    private void stop(List<Mutation<T>> pending, Throwable failure) {
+        flusherFailure = failure;
+        pending.forEach(mutation -> mutation.completion().completeExceptionally(flusherStopped()));
+        failQueued();
+    }
+
+    private void failQueued() {
+        Mutation<T> mutation;
+        while ((mutation = queue.poll()) != null) {
+            mutation.completion().completeExceptionally(flusherStopped());
+        }
+    }
+
+    private DataException flusherStopped() {
+        return new DataException("Write-behind flusher stopped", flusherFailure);
+    }
+
+    private void flush(List<Mutation<T>> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Long[] idsBeforeFlush = new Long[pending.size()];
+        for (int index = 0; index < pending.size(); index++) {
+            Mutation<T> mutation = pending.get(index);
+            if (mutation.type() == MutationType.SAVE) {
+                idsBeforeFlush[index] = IdAccessor.of(mutation.entity().getClass()).getId(mutation.entity());
+            }
+        }
+        try {
+            repository.inTransaction(() -> {
+                writeInOrder(pending);
+                return null;
+            });
+            flushedOperations.add(pending.size());
+            pending.forEach(mutation -> mutation.completion().complete(null));
+            pending.clear();
+        } catch (RuntimeException e) {
+            for (int index = 0; index < pending.size(); index++) {
+                Mutation<T> mutation = pending.get(index);
+                if (mutation.type() == MutationType.SAVE) {
+                    IdAccessor.of(mutation.entity().getClass()).setId(mutation.entity(), idsBeforeFlush[index]);
+                }
+            }
+            failedOperations.add(pending.size());
+            pending.forEach(mutation -> mutation.completion().completeExceptionally(e));
+            pending.clear();
+        } finally {
+            long flushNanos = System.nanoTime() - start;
+            flushCount.increment();
+            totalFlushNanos.add(flushNanos);
+            maxFlushNanos.accumulateAndGet(flushNanos, Math::max);
+        }
+    }
+
+    /**
+     * Writes each run of consecutive mutations of the same type as one batch.
+     */
+    private void writeInOrder(List<Mutation<T>> mutations) {
+        int fromIndex = 0;
+        while (fromIndex < mutations.size()) {
+            MutationType type = mutations.get(fromIndex).type();
+            List<T> entities = new ArrayList<>();
+            int toIndex = fromIndex;
+            while (toIndex < mutations.size() && mutations.get(toIndex).type() == type) {
+                entities.add(mutations.get(toIndex).entity());
+                toIndex++;
+            }
+            switch (type) {
+                case SAVE -> repository.saveAll(entities);
+                case UPDATE -> repository.updateAll(entities);
+                case DELETE -> repository.deleteAll(entities);
+                default -> throw new IllegalStateException("Unexpected mutation " + type);
+            }
+            fromIndex = toIndex;
+        }
+    }
+
+    private enum MutationType {
+        SAVE, UPDATE, DELETE, FLUSH, CLOSE
+    }
+
+    private record Mutation<T>(MutationType type, T entity, CompletableFuture<Void> completion) {
+    }
+}
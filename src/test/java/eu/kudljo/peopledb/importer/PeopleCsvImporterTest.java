@@ -0,0 +1,119 @@
+package eu.kudljo.peopledb.importer;
+
+import eu.kudljo.peopledb.exception.ImportException;
+import eu.kudljo.peopledb.model.Person;
+import eu.kudljo.peopledb.repository.PeopleRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+class PeopleCsvImporterTest {
+    private static final String URL = "jdbc:h2:mem:;INIT=RUNSCRIPT FROM 'classpath:schema.sql'";
+
+    private Connection connection;
+    private PeopleRepository peopleRepository;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(URL);
+        peopleRepository = new PeopleRepository(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void parsesPerson() {
+        Person person = PeopleCsvImporter.parsePerson(row(1, "73000.28"));
+
+        assertThat(person.getFirstName()).isEqualTo("John1");
+        assertThat(person.getLastName()).isEqualTo("Smith");
+        assertThat(person.getEmail()).isEqualTo("john1@example.com");
+        assertThat(person.getDob()).isEqualTo(ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+        assertThat(person.getSalary()).isEqualTo(new BigDecimal("73000.28"));
+    }
+
+    @Test
+    void importsAllRowsAndReportsEachChunkAndCommit() {
+        List<ImportProgress> progress = new ArrayList<>();
+        PeopleCsvImporter importer = new PeopleCsvImporter(peopleRepository)
+                .setWorkerCount(2)
+                .setChunkSize(2)
+                .setCommitInterval(2)
+                .setProgressListener(progress::add);
+
+        long offset = importer.importFrom(new StringReader(csv(rows(1, 5))), 0);
+
+        assertThat(offset).isEqualTo(5);
+        assertThat(peopleRepository.count()).isEqualTo(5);
+        assertThat(peopleRepository.findAll()).extracting(Person::getFirstName)
+                .containsExactlyInAnyOrder("John1", "John2", "John3", "John4", "John5");
+        // the last chunk of one row is reported before its commit
+        assertThat(progress).extracting(ImportProgress::committedOffset).containsExactly(2L, 4L, 4L, 5L);
+        assertThat(progress).extracting(ImportProgress::importedRows).containsExactly(2L, 4L, 5L, 5L);
+    }
+
+    @Test
+    void failingRowRollsBackToCommittedOffsetAndImportResumesFromIt() {
+        PeopleCsvImporter importer = new PeopleCsvImporter(peopleRepository)
+                .setChunkSize(1)
+                .setCommitInterval(4);
+        List<String> rows = rows(1, 7);
+        rows.set(5, row(6, "not a salary"));
+
+        ImportException exception = catchThrowableOfType(
+                () -> importer.importFrom(new StringReader(csv(rows)), 0), ImportException.class);
+
+        // row 5 was saved after the commit of rows 1-4 and is rolled back with the failing row 6
+        assertThat(exception.getCommittedOffset()).isEqualTo(4);
+        assertThat(exception.getCause()).isInstanceOf(NumberFormatException.class);
+        assertThat(peopleRepository.count()).isEqualTo(4);
+
+        rows.set(5, row(6, "60000"));
+        long offset = importer.importFrom(new StringReader(csv(rows)), exception.getCommittedOffset());
+
+        assertThat(offset).isEqualTo(7);
+        assertThat(peopleRepository.findAll()).extracting(Person::getFirstName)
+                .containsExactlyInAnyOrder("John1", "John2", "John3", "John4", "John5", "John6", "John7");
+    }
+
+    private static String csv(List<String> rows) {
+        return "header\n" + String.join("\n", rows) + "\n";
+    }
+
+    private static List<String> rows(int first, int last) {
+        return IntStream.rangeClosed(first, last)
+                .mapToObj(index -> row(index, "50000"))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static String row(int index, String salary) {
+        String[] columns = new String[26];
+        Arrays.fill(columns, "");
+        columns[2] = "John" + index;
+        columns[4] = "Smith";
+        columns[6] = "john" + index + "@example.com";
+        columns[10] = "11/15/1980";
+        columns[11] = "03:15:00 PM";
+        columns[25] = salary;
+        return String.join(",", columns);
+    }
+}
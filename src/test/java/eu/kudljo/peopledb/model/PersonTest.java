@@ -2,6 +2,7 @@ package eu.kudljo.peopledb.model;
 
 import org.junit.jupiter.api.Test;
 
+import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 
@@ -28,4 +29,16 @@ class PersonTest {
 
         assertThat(person1).isNotEqualTo(person2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void tracksChangedAttributes() {
+        Person person = new Person("p1", "smith",
+                ZonedDateTime.of(2000, 9, 1, 12, 0, 0, 0, ZoneId.of("+0")));
+        assertThat(person.getDirtyAttributes()).containsExactlyInAnyOrder(PersonAttribute.values());
+
+        person.markClean();
+        person.setSalary(new BigDecimal("1000"));
+
+        assertThat(person.getDirtyAttributes()).containsExactly(PersonAttribute.SALARY);
+    }
+}
@@ -0,0 +1,78 @@
+package eu.kudljo.peopledb.pool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConnectionPoolTest {
+
+    private ConnectionPool connectionPool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connectionPool = new ConnectionPool(() -> DriverManager.getConnection("jdbc:h2:mem:pooltest"),
+                1, 2, Duration.ofMillis(100));
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionPool.close();
+    }
+
+    @Test
+    public void reusesReturnedConnection() throws SQLException {
+        Connection physicalConnection;
+        try (Connection connection = connectionPool.getConnection()) {
+            physicalConnection = connection.unwrap(Connection.class);
+        }
+        try (Connection connection = connectionPool.getConnection()) {
+            assertThat(connection.unwrap(Connection.class)).isSameAs(physicalConnection);
+        }
+
+        assertThat(connectionPool.getMetrics().totalConnections()).isEqualTo(1);
+    }
+
+    @Test
+    public void returnedConnectionCannotBeUsed() throws SQLException {
+        Connection connection = connectionPool.getConnection();
+        connection.close();
+
+        assertThat(connection.isClosed()).isTrue();
+        assertThatThrownBy(connection::createStatement).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    public void rollsBackReturnedConnection() throws SQLException {
+        try (Connection connection = connectionPool.getConnection()) {
+            connection.setAutoCommit(false);
+        }
+        try (Connection connection = connectionPool.getConnection()) {
+            assertThat(connection.getAutoCommit()).isTrue();
+        }
+    }
+
+    @Test
+    public void timesOutWhenExhausted() throws SQLException {
+        try (Connection connection1 = connectionPool.getConnection();
+             Connection connection2 = connectionPool.getConnection()) {
+            assertThatThrownBy(connectionPool::getConnection).isInstanceOf(SQLTimeoutException.class);
+
+            PoolMetrics metrics = connectionPool.getMetrics();
+            assertThat(metrics.activeConnections()).isEqualTo(2);
+            assertThat(metrics.utilization()).isEqualTo(1.0);
+            assertThat(metrics.timeoutCount()).isEqualTo(1);
+            assertThat(metrics.maxWaitNanos()).isGreaterThanOrEqualTo(Duration.ofMillis(100).toNanos());
+        }
+
+        assertThat(connectionPool.getMetrics().idleConnections()).isEqualTo(2);
+    }
+}
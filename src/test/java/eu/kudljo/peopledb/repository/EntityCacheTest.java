@@ -0,0 +1,37 @@
+package eu.kudljo.peopledb.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntityCacheTest {
+    private final EntityCache<String> entityCache = new EntityCache<>(10, Duration.ofMinutes(1).toNanos());
+
+    @Test
+    public void putsEntityLoadedSinceGeneration() {
+        long generation = entityCache.getGeneration(1L);
+        entityCache.put(1L, "loaded", generation);
+
+        assertThat(entityCache.get(1L)).isEqualTo("loaded");
+    }
+
+    @Test
+    public void dropsEntityLoadedBeforeInvalidation() {
+        long generation = entityCache.getGeneration(1L);
+        entityCache.invalidate(1L);
+        entityCache.put(1L, "stale", generation);
+
+        assertThat(entityCache.get(1L)).isNull();
+    }
+
+    @Test
+    public void dropsEntityLoadedBeforeInvalidationOfAll() {
+        long generation = entityCache.getGeneration(1L);
+        entityCache.invalidateAll();
+        entityCache.put(1L, "stale", generation);
+
+        assertThat(entityCache.get(1L)).isNull();
+    }
+}
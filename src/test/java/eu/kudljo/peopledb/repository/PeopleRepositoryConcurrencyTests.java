@@ -0,0 +1,258 @@
+package eu.kudljo.peopledb.repository;
+
+import eu.kudljo.peopledb.exception.DataException;
+import eu.kudljo.peopledb.model.Person;
+import eu.kudljo.peopledb.pool.ConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class PeopleRepositoryConcurrencyTests {
+    private static final String URL = "jdbc:h2:mem:concurrency;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:schema.sql'";
+    private static final int THREAD_COUNT = 16;
+    private static final int OPERATIONS_PER_THREAD = 500;
+
+    private static ConnectionPool connectionPool;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        connectionPool = new ConnectionPool(URL, 1, THREAD_COUNT);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionPool.close();
+    }
+
+    @Test
+    public void canShareDataSourceRepositoryBetweenThreads() throws Exception {
+        PeopleRepository peopleRepository = new PeopleRepository(connectionPool);
+        long startCount = peopleRepository.count();
+
+        List<Long> savedIds = hammer(peopleRepository, THREAD_COUNT);
+
+        assertThat(savedIds).hasSize(THREAD_COUNT * OPERATIONS_PER_THREAD).doesNotHaveDuplicates();
+        assertThat(peopleRepository.count()).isEqualTo(startCount + THREAD_COUNT * OPERATIONS_PER_THREAD);
+        assertThat(connectionPool.getMetrics().activeConnections()).isZero();
+        peopleRepository.close();
+    }
+
+    @Test
+    public void canShareSingleConnectionRepositoryBetweenThreads() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL);
+             PeopleRepository peopleRepository = new PeopleRepository(connection)) {
+            hammer(peopleRepository, THREAD_COUNT);
+        }
+    }
+
+    @Test
+    public void canFindPeopleAsync() {
+        try (AsyncPeopleRepository asyncPeopleRepository = new AsyncPeopleRepository(connectionPool, 4)) {
+            List<CompletableFuture<Person>> savedPeople = new ArrayList<>();
+            for (int index = 0; index < 8; index++) {
+                savedPeople.add(asyncPeopleRepository.saveAsync(new Person("Async" + index, "Smith", ZonedDateTime.of(
+                        1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")))));
+            }
+            List<CompletableFuture<Optional<Person>>> foundPeople = savedPeople.stream()
+                    .map(savedPerson -> savedPerson.thenCompose(person -> asyncPeopleRepository.findByIdAsync(person.getId())))
+                    .toList();
+
+            for (int index = 0; index < savedPeople.size(); index++) {
+                assertThat(foundPeople.get(index).join()).contains(savedPeople.get(index).join());
+            }
+            assertThat(asyncPeopleRepository.getInFlightCount()).isZero();
+        }
+    }
+
+    @Test
+    public void singleConnectionStreamCanBeClosedByAnotherThread() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL)) {
+            PeopleRepository peopleRepository = new PeopleRepository(connection);
+            Stream<Person> people = peopleRepository.streamAll();
+            ExecutorService executorService = Executors.newSingleThreadExecutor();
+            try {
+                executorService.submit(people::close).get(10, TimeUnit.SECONDS);
+
+                assertThat(executorService.submit(() -> peopleRepository.count()).get(10, TimeUnit.SECONDS)).isNotNegative();
+            } finally {
+                executorService.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void writeBehindCommitsQueuedMutationsInGroups() {
+        PeopleRepository peopleRepository = new PeopleRepository(connectionPool);
+        List<Person> people = new ArrayList<>();
+        List<CompletableFuture<Void>> saved = new ArrayList<>();
+        try (WriteBehindRepository<Person> writeBehindRepository = WriteBehindRepository.of(
+                peopleRepository, 1000, 25, Duration.ofSeconds(1))) {
+            for (int index = 0; index < 100; index++) {
+                Person person = new Person("WriteBehind" + index, "Smith", ZonedDateTime.of(
+                        1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+                people.add(person);
+                saved.add(writeBehindRepository.save(person));
+            }
+            writeBehindRepository.flush();
+
+            WriteBehindMetrics metrics = writeBehindRepository.getMetrics();
+            assertThat(saved).allMatch(future -> future.isDone() && !future.isCompletedExceptionally());
+            assertThat(metrics.flushedOperations()).isEqualTo(100);
+            assertThat(metrics.flushCount()).isLessThan(100);
+        }
+        assertThat(peopleRepository.findAllById(people.stream().map(Person::getId).toList())).hasSize(100);
+        peopleRepository.close();
+    }
+
+    @Test
+    public void writeBehindCompletesEverySaveQueuedBeforeClose() throws Exception {
+        PeopleRepository peopleRepository = new PeopleRepository(connectionPool);
+        WriteBehindRepository<Person> writeBehindRepository = new WriteBehindRepository<>(
+                peopleRepository, 10, 5, Duration.ofMillis(10));
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<List<CompletableFuture<Void>>>> savers = new ArrayList<>();
+        for (int thread = 0; thread < THREAD_COUNT; thread++) {
+            savers.add(executorService.submit(() -> {
+                List<CompletableFuture<Void>> saved = new ArrayList<>();
+                try {
+                    while (true) {
+                        saved.add(writeBehindRepository.save(new Person("Closing", "Smith", ZonedDateTime.of(
+                                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")))));
+                    }
+                } catch (IllegalStateException closed) {
+                    return saved;
+                }
+            }));
+        }
+        Thread.sleep(50);
+        writeBehindRepository.close();
+
+        for (Future<List<CompletableFuture<Void>>> saver : savers) {
+            assertThat(saver.get(10, TimeUnit.SECONDS)).allMatch(future -> future.isDone() && !future.isCompletedExceptionally());
+        }
+        executorService.shutdown();
+        peopleRepository.close();
+    }
+
+    @Test
+    public void writeBehindRestoresIdsOfRolledBackSaves() {
+        PeopleRepository peopleRepository = new PeopleRepository(connectionPool);
+        Person updated = peopleRepository.save(new Person("Updated", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"))));
+        Person saved = new Person("Saved", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+        saved.setEmail("rolled.back@example.com");
+        Person duplicate = new Person("Duplicate", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+        duplicate.setEmail("rolled.back@example.com");
+        long startCount = peopleRepository.count();
+
+        CompletableFuture<Void> savedFuture;
+        try (WriteBehindRepository<Person> writeBehindRepository = new WriteBehindRepository<>(
+                peopleRepository, 10, 10, Duration.ofSeconds(1))) {
+            // the save of the first run gets its ID before the duplicate email of the last run fails the flush
+            savedFuture = writeBehindRepository.save(saved);
+            updated.setSalary(new BigDecimal("1.50"));
+            writeBehindRepository.update(updated);
+            writeBehindRepository.save(duplicate);
+            writeBehindRepository.flush();
+        }
+
+        assertThat(savedFuture).isCompletedExceptionally();
+        assertThat(saved.getId()).isNull();
+        assertThat(duplicate.getId()).isNull();
+        assertThat(peopleRepository.count()).isEqualTo(startCount);
+        peopleRepository.close();
+    }
+
+    @Test
+    public void writeBehindFailsMutationsAndCloseIfFlusherDies() {
+        PeopleRepository peopleRepository = new PeopleRepository(connectionPool) {
+            @Override
+            public long saveAll(Iterable<Person> entities) {
+                throw new AssertionError("Flusher killed");
+            }
+        };
+        WriteBehindRepository<Person> writeBehindRepository = new WriteBehindRepository<>(
+                peopleRepository, 10, 1, Duration.ofSeconds(1));
+
+        CompletableFuture<Void> saved = writeBehindRepository.save(new Person("Killer", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"))));
+        Throwable failure = catchThrowable(() -> saved.get(10, TimeUnit.SECONDS));
+        CompletableFuture<Void> savedLater = writeBehindRepository.save(new Person("Later", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"))));
+
+        assertThat(failure).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(DataException.class);
+        assertThat(catchThrowable(() -> savedLater.get(10, TimeUnit.SECONDS))).hasCauseInstanceOf(DataException.class);
+        assertThatThrownBy(writeBehindRepository::close).isInstanceOf(DataException.class);
+        peopleRepository.close();
+    }
+
+    @Test
+    public void writeBehindRefusesSingleConnectionRepository() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL)) {
+            PeopleRepository peopleRepository = new PeopleRepository(connection);
+
+            assertThatThrownBy(() -> new WriteBehindRepository<>(peopleRepository, 10, 10, Duration.ofSeconds(1)))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    /**
+     * Every thread saves people and reads them back, any mix-up of statement parameters
+     * between threads shows up as a person with another thread's name or salary.
+     */
+    private static List<Long> hammer(PeopleRepository peopleRepository, int threadCount) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        List<Callable<List<Long>>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < threadCount; thread++) {
+            String firstName = "Thread" + thread;
+            tasks.add(() -> {
+                List<Long> savedIds = new ArrayList<>(OPERATIONS_PER_THREAD);
+                for (int operation = 0; operation < OPERATIONS_PER_THREAD; operation++) {
+                    Person person = new Person(firstName, "Smith" + operation, ZonedDateTime.of(
+                            1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+                    person.setSalary(new BigDecimal(operation + ".50"));
+                    peopleRepository.save(person);
+
+                    Person foundPerson = peopleRepository.findById(person.getId()).orElseThrow();
+                    assertThat(foundPerson).isEqualTo(person);
+                    assertThat(foundPerson.getSalary()).isEqualByComparingTo(person.getSalary());
+                    savedIds.add(person.getId());
+                }
+                return savedIds;
+            });
+        }
+        List<Long> savedIds = new ArrayList<>();
+        try {
+            for (Future<List<Long>> future : executorService.invokeAll(tasks)) {
+                savedIds.addAll(future.get());
+            }
+        } finally {
+            executorService.shutdown();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return savedIds;
+    }
+}
@@ -1,25 +1,38 @@
 package eu.kudljo.peopledb.repository;
 
+import eu.kudljo.peopledb.exception.DataException;
+import eu.kudljo.peopledb.importer.PeopleCsvImporter;
 import eu.kudljo.peopledb.model.Address;
+import eu.kudljo.peopledb.model.CrudOperation;
+import eu.kudljo.peopledb.model.FetchPlan;
+import eu.kudljo.peopledb.model.GraphLoadMode;
 import eu.kudljo.peopledb.model.Person;
+import eu.kudljo.peopledb.model.PersonPageCursor;
+import eu.kudljo.peopledb.model.PersonSalary;
+import eu.kudljo.peopledb.model.PersonSortKey;
 import eu.kudljo.peopledb.model.Region;
+import eu.kudljo.peopledb.model.SalaryStats;
 import org.junit.jupiter.api.*;
 
-import java.io.IOException;
 import java.math.BigDecimal;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.*;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toSet;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class PeopleRepositoryTests {
 
@@ -133,6 +146,47 @@ public class PeopleRepositoryTests {
 //        connection.commit();
     }
 
+    @Test
+    public void canSaveAll() {
+        List<Person> people = IntStream.range(0, 25)
+                .mapToObj(i -> new Person("John" + i, "Smith", ZonedDateTime.of(
+                        1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))))
+                .toList();
+
+        long savedCount = peopleRepository.saveAll(people, 10);
+
+        assertThat(savedCount).isEqualTo(25);
+        assertThat(people.stream().map(Person::getId).collect(toSet())).hasSize(25);
+        people.forEach(person -> assertThat(person.getId()).isGreaterThan(0));
+    }
+
+    @Test
+    public void canSaveAllWithAddressesSpouseAndChildren() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala",
+                "WA", "90210", "United States", "Fulton County", Region.WEST));
+        john.setSpouse(new Person("Susan", "Smith", ZonedDateTime.of(
+                1982, 9, 10, 23, 55, 59, 0, ZoneId.of("-6"))
+        ));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(
+                2010, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))
+        ));
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.of(
+                1982, 9, 13, 15, 15, 0, 0, ZoneId.of("-8"))
+        );
+
+        peopleRepository.saveAll(List.of(john, bobby));
+        Person foundPerson = peopleRepository.findById(john.getId()).get();
+
+        assertThat(foundPerson.getFirstName()).isEqualTo("John");
+        assertThat(foundPerson.getHomeAddress().get().state()).isEqualTo("WA");
+        assertThat(foundPerson.getSpouse().get().getFirstName()).isEqualTo("Susan");
+        assertThat(foundPerson.getChildren()).extracting(Person::getFirstName).containsExactly("Johnny");
+        assertThat(bobby.getId()).isGreaterThan(john.getId());
+    }
+
     @Test
     public void canFindPersonById() {
         Person savedPerson = peopleRepository.save(new Person("test", "jackson", ZonedDateTime.now()));
@@ -141,6 +195,19 @@ public class PeopleRepositoryTests {
         assertThat(foundPerson).isEqualTo(savedPerson);
     }
 
+    @Test
+    public void canSaveAndFindAddressWithGeneratedMapper() {
+        AddressRepository addressRepository = new AddressRepository(connection);
+        Address address = new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala",
+                "WA", "90210", "United States", "Fulton County", Region.WEST);
+
+        Address savedAddress = addressRepository.save(address);
+        Address foundAddress = addressRepository.findById(savedAddress.id()).get();
+
+        assertThat(savedAddress.id()).isGreaterThan(0);
+        assertThat(foundAddress).isEqualTo(savedAddress);
+    }
+
     @Test
     public void canFindPersonByIdWithHomeAddress() {
         Person john = new Person("JohnZZZ", "Smith", ZonedDateTime.of(
@@ -211,6 +278,67 @@ public class PeopleRepositoryTests {
                 .contains("Johnny", "Sarah", "Jenny");
     }
 
+    @Test
+    public void joinAndSelectInLoadSameGraph() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        Address address = new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala",
+                "WA", "90210", "United States", "Fulton County", Region.WEST);
+        john.setHomeAddress(address);
+        john.setBusinessAddress(address);
+        john.setSpouse(new Person("Susan", "Smith", ZonedDateTime.of(
+                1982, 9, 10, 23, 55, 59, 0, ZoneId.of("-6"))
+        ));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(
+                2010, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))
+        ));
+        john.addChild(new Person("Sarah", "Smith", ZonedDateTime.of(
+                2012, 1, 3, 1, 0, 0, 0, ZoneId.of("-6"))
+        ));
+        peopleRepository.save(john);
+
+        peopleRepository.setGraphLoadMode(GraphLoadMode.JOIN);
+        Person joined = peopleRepository.findById(john.getId(), FetchPlan.EAGER).get();
+        peopleRepository.setGraphLoadMode(GraphLoadMode.SELECT_IN);
+        Person selectedIn = peopleRepository.findById(john.getId(), FetchPlan.EAGER).get();
+
+        assertThat(selectedIn).isEqualTo(joined);
+        assertThat(selectedIn.getHomeAddress()).isEqualTo(joined.getHomeAddress());
+        assertThat(selectedIn.getBusinessAddress()).isEqualTo(joined.getBusinessAddress());
+        assertThat(selectedIn.getSpouse()).isEqualTo(joined.getSpouse());
+        assertThat(selectedIn.getChildren()).containsExactlyInAnyOrderElementsOf(joined.getChildren());
+    }
+
+    @Test
+    public void lazyPersonLoadsAssociationsOnFirstAccess() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala",
+                "WA", "90210", "United States", "Fulton County", Region.WEST));
+        Person susan = new Person("Susan", "Smith", ZonedDateTime.of(
+                1982, 9, 10, 23, 55, 59, 0, ZoneId.of("-6"))
+        );
+        john.setSpouse(susan);
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(
+                2010, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))
+        ));
+        peopleRepository.save(john);
+
+        Person lazyJohn = peopleRepository.findById(john.getId(), FetchPlan.LAZY).get();
+        Person eagerJohn = peopleRepository.findById(john.getId(), FetchPlan.EAGER).get();
+        susan.setFirstName("Suzanne");
+        peopleRepository.update(susan);
+
+        assertThat(lazyJohn).isEqualTo(eagerJohn);
+        assertThat(eagerJohn.getSpouse().get().getFirstName()).isEqualTo("Susan");
+        assertThat(lazyJohn.getSpouse().get().getFirstName()).isEqualTo("Suzanne");
+        assertThat(lazyJohn.getHomeAddress()).isEqualTo(eagerJohn.getHomeAddress());
+        assertThat(lazyJohn.getBusinessAddress()).isEmpty();
+        assertThat(lazyJohn.getChildren()).containsExactlyElementsOf(eagerJohn.getChildren());
+    }
+
     @Test
     public void testPersonIdNotFound() {
         Optional<Person> foundPerson = peopleRepository.findById(-1L);
@@ -218,6 +346,88 @@ public class PeopleRepositoryTests {
         assertThat(foundPerson).isEmpty();
     }
 
+    @Test
+    public void sessionReturnsSameInstanceForSameId() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        john.setSpouse(new Person("Susan", "Smith", ZonedDateTime.of(
+                1982, 9, 10, 23, 55, 59, 0, ZoneId.of("-6"))
+        ));
+        peopleRepository.save(john);
+
+        try (Session session = Session.open()) {
+            Person foundJohn = peopleRepository.findById(john.getId()).get();
+            Person foundSusan = peopleRepository.findById(john.getSpouse().get().getId()).get();
+
+            assertThat(peopleRepository.findById(john.getId()).get()).isSameAs(foundJohn);
+            assertThat(foundJohn.getSpouse().get()).isSameAs(foundSusan);
+        }
+    }
+
+    @Test
+    public void sessionSavesSharedEntitiesOnce() {
+        Address address = new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala",
+                "WA", "90210", "United States", "Fulton County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        Person susan = new Person("Susan", "Smith", ZonedDateTime.of(
+                1982, 9, 10, 23, 55, 59, 0, ZoneId.of("-6"))
+        );
+        john.setHomeAddress(address);
+        susan.setHomeAddress(address);
+        john.setSpouse(susan);
+        susan.setSpouse(john);
+        long startCount = peopleRepository.count();
+
+        try (Session session = Session.open()) {
+            Long addressId = peopleRepository.save(john).getHomeAddress().get().id();
+            peopleRepository.saveAll(List.of(john, susan));
+            peopleRepository.save(susan);
+
+            assertThat(susan.getHomeAddress().get().id()).isEqualTo(addressId);
+        }
+        assertThat(peopleRepository.count()).isEqualTo(startCount + 2);
+    }
+
+    @Test
+    public void failedSpouseSaveFailsSaveOfPerson() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        // longer than the VARCHAR(255) of the column
+        john.setSpouse(new Person("S".repeat(300), "Smith", ZonedDateTime.of(
+                1982, 9, 10, 23, 55, 59, 0, ZoneId.of("-6"))
+        ));
+        long startCount = peopleRepository.count();
+
+        assertThatThrownBy(() -> peopleRepository.save(john)).isInstanceOf(DataException.class);
+        assertThat(john.getId()).isNull();
+        assertThat(peopleRepository.count()).isEqualTo(startCount);
+    }
+
+    @Test
+    public void sessionSavesMutualSpousesLinked() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        Person susan = new Person("Susan", "Smith", ZonedDateTime.of(
+                1982, 9, 10, 23, 55, 59, 0, ZoneId.of("-6"))
+        );
+        john.setSpouse(susan);
+        susan.setSpouse(john);
+
+        try (Session session = Session.open()) {
+            peopleRepository.save(john);
+        }
+
+        Person foundJohn = peopleRepository.findById(john.getId(), FetchPlan.EAGER).get();
+        Person foundSusan = peopleRepository.findById(susan.getId(), FetchPlan.EAGER).get();
+        assertThat(foundJohn.getSpouse().get().getId()).isEqualTo(susan.getId());
+        assertThat(foundSusan.getSpouse().get().getId()).isEqualTo(john.getId());
+    }
+
     @Test
     public void canFindAll() {
         peopleRepository.save(
@@ -261,6 +471,129 @@ public class PeopleRepositoryTests {
         assertThat(people.size()).isGreaterThanOrEqualTo(9);
     }
 
+    @Test
+    public void canStreamAll() {
+        Person john = peopleRepository.save(new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        ));
+        long count = peopleRepository.count();
+
+        try (Stream<Person> people = peopleRepository.streamAll(10)) {
+            List<Person> streamedPeople = people.toList();
+
+            assertThat(streamedPeople).hasSize((int) count);
+            assertThat(streamedPeople).contains(john);
+        }
+    }
+
+    @Test
+    public void canStreamQuery() {
+        Person john = peopleRepository.save(new Person("JohnZZZ", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        ));
+
+        try (Stream<Person> people = peopleRepository.stream("""
+                SELECT ID AS PARENT_ID, FIRST_NAME AS PARENT_FIRST_NAME, LAST_NAME AS PARENT_LAST_NAME,
+                DOB AS PARENT_DOB, SALARY AS PARENT_SALARY
+                FROM PEOPLE WHERE ID = ?
+                """, 10, john.getId())) {
+            assertThat(people.toList()).containsExactly(john);
+        }
+    }
+
+    @Test
+    public void canFindAllByIdInRequestOrder() {
+        List<Person> savedPeople = createPeople(3).map(peopleRepository::save).toList();
+        List<Long> ids = List.of(savedPeople.get(2).getId(), -1L, savedPeople.get(0).getId(), savedPeople.get(1).getId());
+
+        List<Person> foundPeople = peopleRepository.findAllById(ids);
+
+        assertThat(foundPeople).containsExactly(savedPeople.get(2), savedPeople.get(0), savedPeople.get(1));
+    }
+
+    @Test
+    public void canFindAllByIdInSeveralChunks() {
+        List<Long> ids = createPeople(CRUDRepository.MAX_IN_LIST_SIZE + 10)
+                .map(peopleRepository::save)
+                .map(Person::getId)
+                .toList();
+
+        assertThat(peopleRepository.findAllByIdAsMap(ids).keySet()).containsExactlyElementsOf(ids);
+    }
+
+    @Test
+    public void canFindPagesAfterId() {
+        List<Person> savedPeople = createPeople(5).map(peopleRepository::save).toList();
+        Long beforeFirstId = savedPeople.get(0).getId() - 1;
+
+        List<Person> firstPage = peopleRepository.findPage(beforeFirstId, 3);
+        List<Person> secondPage = peopleRepository.findPage(firstPage.get(2).getId(), 3);
+
+        assertThat(firstPage).containsExactlyElementsOf(savedPeople.subList(0, 3));
+        assertThat(secondPage).containsExactlyElementsOf(savedPeople.subList(3, 5));
+    }
+
+    @Test
+    public void canFindPagesBySortKey() {
+        Person zed = peopleRepository.save(new Person("John", "ZZZZZZ1", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        ));
+        Person zed2 = peopleRepository.save(new Person("John", "ZZZZZZ1", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        ));
+        Person zed3 = peopleRepository.save(new Person("John", "ZZZZZZ2", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        ));
+        PersonPageCursor beforeZed = new PersonPageCursor("ZZZZZZ0", 0L);
+
+        List<Person> firstPage = peopleRepository.findPage(PersonSortKey.LAST_NAME, beforeZed, 2);
+        List<Person> secondPage = peopleRepository.findPage(PersonSortKey.LAST_NAME,
+                PersonPageCursor.after(PersonSortKey.LAST_NAME, firstPage.get(1)), 2);
+
+        assertThat(firstPage).containsExactly(zed, zed2);
+        assertThat(secondPage).startsWith(zed3);
+    }
+
+    @Test
+    public void canPageThroughPeopleWithoutSortKeyValue() {
+        Person highest = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        highest.setSalary(new BigDecimal("9999999999999.98"));
+        peopleRepository.save(highest);
+        Person highest2 = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        highest2.setSalary(new BigDecimal("9999999999999.99"));
+        peopleRepository.save(highest2);
+        Person withoutSalary = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        withoutSalary.setSalary(null);
+        peopleRepository.save(withoutSalary);
+        Person withoutSalary2 = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        withoutSalary2.setSalary(null);
+        peopleRepository.save(withoutSalary2);
+        PersonPageCursor beforeHighest = new PersonPageCursor(new BigDecimal("9999999999999.97"), 0L);
+
+        List<Person> firstPage = peopleRepository.findPage(PersonSortKey.SALARY, beforeHighest, 2);
+        List<Person> secondPage = peopleRepository.findPage(PersonSortKey.SALARY,
+                PersonPageCursor.after(PersonSortKey.SALARY, firstPage.get(1)), 1);
+        List<Person> thirdPage = peopleRepository.findPage(PersonSortKey.SALARY,
+                PersonPageCursor.after(PersonSortKey.SALARY, secondPage.get(0)), 1);
+        List<Person> lastPage = peopleRepository.findPage(PersonSortKey.SALARY,
+                PersonPageCursor.after(PersonSortKey.SALARY, thirdPage.get(0)), 1);
+
+        assertThat(firstPage).containsExactly(highest, highest2);
+        assertThat(secondPage).containsExactly(withoutSalary);
+        assertThat(thirdPage).containsExactly(withoutSalary2);
+        assertThat(lastPage).isEmpty();
+        assertThat(peopleRepository.findPage(PersonSortKey.SALARY, beforeHighest, 3))
+                .containsExactly(highest, highest2, withoutSalary);
+    }
+
     @Test
     public void canGetCount() {
         long startCount = peopleRepository.count();
@@ -277,6 +610,65 @@ public class PeopleRepositoryTests {
         assertThat(endCount).isEqualTo(startCount + 2);
     }
 
+    @Test
+    public void criteriaShapesAndInListSizesDoNotEvictCachedStatements() {
+        peopleRepository.count();
+        peopleRepository.findById(-1L);
+        for (int valueCount = 1; valueCount <= CRUDRepository.MAX_IN_LIST_SIZE; valueCount *= 2) {
+            List<String> firstNames = IntStream.range(0, valueCount).mapToObj(index -> "Nobody" + index).toList();
+            for (PersonField<?> field : List.of(PersonField.FIRST_NAME, PersonField.LAST_NAME, PersonField.DOB, PersonField.SALARY)) {
+                peopleRepository.find(PersonCriteria.where(PersonField.FIRST_NAME.in(firstNames)).orderBy(field));
+                peopleRepository.find(PersonCriteria.where(PersonField.FIRST_NAME.in(firstNames)).orderByDescending(field));
+            }
+            peopleRepository.findAllById(LongStream.range(0, valueCount).boxed().toList());
+        }
+        long missCount = peopleRepository.getStatementCacheMissCount();
+
+        peopleRepository.count();
+        peopleRepository.findById(-1L);
+
+        assertThat(peopleRepository.getStatementCacheMissCount()).isEqualTo(missCount);
+    }
+
+    @Test
+    public void reusesCachedStatements() {
+        peopleRepository.count();
+        peopleRepository.findById(-1L);
+        long missCount = peopleRepository.getStatementCacheMissCount();
+        long hitCount = peopleRepository.getStatementCacheHitCount();
+
+        peopleRepository.count();
+        peopleRepository.findById(-1L);
+
+        assertThat(peopleRepository.getStatementCacheMissCount()).isEqualTo(missCount);
+        assertThat(peopleRepository.getStatementCacheHitCount()).isEqualTo(hitCount + 2);
+    }
+
+    @Test
+    public void canFindPersonByIdInEntityCache() {
+        peopleRepository.enableEntityCache(100, Duration.ofMinutes(1));
+        try {
+            Person savedPerson = peopleRepository.save(new Person("John", "Smith", ZonedDateTime.of(
+                    1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")))
+            );
+            Person foundPerson = peopleRepository.findById(savedPerson.getId()).get();
+            Person cachedPerson = peopleRepository.findById(savedPerson.getId()).get();
+
+            assertThat(cachedPerson).isSameAs(foundPerson);
+            assertThat(peopleRepository.getEntityCacheStats().hitCount()).isEqualTo(1);
+            assertThat(peopleRepository.getEntityCacheStats().missCount()).isEqualTo(1);
+
+            cachedPerson.setSalary(new BigDecimal("73000.28"));
+            peopleRepository.update(cachedPerson);
+            assertThat(peopleRepository.findById(savedPerson.getId()).get()).isNotSameAs(cachedPerson);
+
+            peopleRepository.delete(savedPerson);
+            assertThat(peopleRepository.findById(savedPerson.getId())).isEmpty();
+        } finally {
+            peopleRepository.disableEntityCache();
+        }
+    }
+
     @Test
     public void canDelete() {
         Person savedPerson = peopleRepository.save(new Person(
@@ -307,6 +699,20 @@ public class PeopleRepositoryTests {
         assertThat(endCount).isEqualTo(startCount - 2);
     }
 
+    @Test
+    public void canDeleteAllByIdInSeveralChunks() {
+        List<Long> ids = createPeople(CRUDRepository.MAX_IN_LIST_SIZE * 2 + 1)
+                .map(peopleRepository::save)
+                .map(Person::getId)
+                .toList();
+        long startCount = peopleRepository.count();
+
+        int deletedCount = peopleRepository.deleteAllById(ids);
+
+        assertThat(deletedCount).isEqualTo(ids.size());
+        assertThat(peopleRepository.count()).isEqualTo(startCount - ids.size());
+    }
+
     @Test
     public void canUpdate() {
         Person savedPerson = peopleRepository.save(new Person(
@@ -321,24 +727,315 @@ public class PeopleRepositoryTests {
         assertThat(person2.getSalary()).isNotEqualTo(person1.getSalary());
     }
 
+    @Test
+    public void upsertUpdatesPersonWithSameEmail() {
+        List<Person> people = createPeople(3).toList();
+        people.forEach(person -> person.setEmail(person.getFirstName() + "@upsert.test"));
+        peopleRepository.upsertAll(people);
+        long startCount = peopleRepository.count();
+
+        List<Person> resentPeople = createPeople(3).toList();
+        resentPeople.forEach(person -> {
+            person.setEmail(person.getFirstName() + "@upsert.test");
+            person.setSalary(new BigDecimal("73000.28"));
+        });
+        peopleRepository.upsertAll(resentPeople);
+
+        assertThat(peopleRepository.count()).isEqualTo(startCount);
+        assertThat(resentPeople).extracting(Person::getId).containsExactlyElementsOf(
+                people.stream().map(Person::getId).toList());
+        assertThat(peopleRepository.findById(people.get(0).getId()).get().getSalary()).isEqualTo(new BigDecimal("73000.28"));
+    }
+
+    @Test
+    public void upsertingSameGraphTwiceWritesNoNewRows() throws SQLException {
+        Person john = createUpsertGraph();
+        peopleRepository.upsert(john);
+        long peopleCount = countRows("PEOPLE");
+        long addressCount = countRows("ADDRESSES");
+
+        Person resentJohn = createUpsertGraph();
+        resentJohn.setSalary(new BigDecimal("73000.28"));
+        peopleRepository.upsert(resentJohn);
+
+        assertThat(countRows("PEOPLE")).isEqualTo(peopleCount);
+        assertThat(countRows("ADDRESSES")).isEqualTo(addressCount);
+        assertThat(resentJohn.getId()).isEqualTo(john.getId());
+        assertThat(resentJohn.getSpouse().get().getId()).isEqualTo(john.getSpouse().get().getId());
+        assertThat(resentJohn.getHomeAddress().get().id()).isEqualTo(john.getHomeAddress().get().id());
+        assertThat(resentJohn.getBusinessAddress().get().id()).isEqualTo(john.getBusinessAddress().get().id());
+        Person foundJohn = peopleRepository.findById(john.getId(), FetchPlan.EAGER).get();
+        assertThat(foundJohn.getSalary()).isEqualTo(new BigDecimal("73000.28"));
+        assertThat(foundJohn.getChildren()).extracting(Person::getFirstName).containsExactlyInAnyOrder("Johnny", "Jenny");
+    }
+
+    @Test
+    public void upsertAllLooksUpAddressesOncePerBatch() {
+        List<Person> people = createPeople(3).toList();
+        people.forEach(person -> person.setEmail(person.getFirstName() + "@batch.upsert.test"));
+        List<Person> peopleWithAddresses = createPeople(3).toList();
+        peopleWithAddresses.forEach(person -> {
+            person.setEmail(person.getFirstName() + "@address.upsert.test");
+            person.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala",
+                    "WA", "90210", "United States", "Fulton County", Region.WEST));
+        });
+        List<RepositoryEvent> events = new ArrayList<>();
+        peopleRepository.setRepositoryListener(events::add);
+        try {
+            peopleRepository.upsertAll(people);
+            peopleRepository.upsertAll(peopleWithAddresses);
+        } finally {
+            peopleRepository.setRepositoryListener(null);
+        }
+
+        assertThat(events).extracting(RepositoryEvent::operation)
+                .containsExactly(CrudOperation.UPSERT, CrudOperation.QUERY, CrudOperation.UPSERT);
+        assertThat(peopleWithAddresses).allMatch(person -> person.getHomeAddress().get().id() != null);
+    }
+
+    @Test
+    public void cannotUpsertPersonWithoutEmail() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+
+        assertThatThrownBy(() -> peopleRepository.upsert(john)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Person createUpsertGraph() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(
+                1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))
+        );
+        john.setEmail("john@graph.upsert.test");
+        john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala",
+                "WA", "90210", "United States", "Fulton County", Region.WEST));
+        john.setBusinessAddress(new Address(null, "1 Main St.", null, "Seattle",
+                "WA", "98101", "United States", "King County", Region.WEST));
+        Person susan = new Person("Susan", "Smith", ZonedDateTime.of(
+                1982, 9, 10, 23, 55, 59, 0, ZoneId.of("-6"))
+        );
+        susan.setEmail("susan@graph.upsert.test");
+        john.setSpouse(susan);
+        for (String childName : List.of("Johnny", "Jenny")) {
+            Person child = new Person(childName, "Smith", ZonedDateTime.of(
+                    2010, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))
+            );
+            child.setEmail(childName.toLowerCase() + "@graph.upsert.test");
+            john.addChild(child);
+        }
+        return john;
+    }
+
+    private static long countRows(String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    @Test
+    public void canUpdateAllChangedAttributes() {
+        List<Person> savedPeople = createPeople(10).map(peopleRepository::save).toList();
+        savedPeople.forEach(person -> person.setSalary(new BigDecimal("73000.28")));
+        savedPeople.get(0).setLastName("Jones");
+
+        long updatedCount = peopleRepository.updateAll(savedPeople, 4);
+        List<Person> foundPeople = peopleRepository.findAllById(savedPeople.stream().map(Person::getId).toList());
+
+        assertThat(updatedCount).isEqualTo(10);
+        assertThat(foundPeople).extracting(Person::getSalary).containsOnly(new BigDecimal("73000.28"));
+        assertThat(foundPeople.get(0).getLastName()).isEqualTo("Jones");
+        assertThat(savedPeople).allMatch(person -> person.getDirtyAttributes().isEmpty());
+    }
+
+    @Test
+    public void updateWritesAllAttributesByDefault() throws SQLException {
+        Person savedPerson = peopleRepository.save(createPeople(1).findFirst().get());
+        setLastNameInDatabase(savedPerson.getId(), "Jones");
+        savedPerson.setSalary(new BigDecimal("73000.28"));
+
+        peopleRepository.update(savedPerson);
+        Person foundPerson = peopleRepository.findById(savedPerson.getId()).get();
+
+        assertThat(foundPerson.getSalary()).isEqualTo(new BigDecimal("73000.28"));
+        assertThat(foundPerson.getLastName()).isEqualTo("Smith");
+        assertThat(peopleRepository.updateAll(List.of(savedPerson))).isEqualTo(1);
+    }
+
+    @Test
+    public void updateWritesOnlyDirtyAttributesIfDirtyTrackingIsEnabled() throws SQLException {
+        Person savedPerson = peopleRepository.save(createPeople(1).findFirst().get());
+        setLastNameInDatabase(savedPerson.getId(), "Jones");
+        savedPerson.setSalary(new BigDecimal("73000.28"));
+
+        peopleRepository.setDirtyTrackingEnabled(true);
+        try {
+            peopleRepository.update(savedPerson);
+            Person foundPerson = peopleRepository.findById(savedPerson.getId()).get();
+
+            assertThat(foundPerson.getSalary()).isEqualTo(new BigDecimal("73000.28"));
+            assertThat(foundPerson.getLastName()).isEqualTo("Jones");
+            assertThat(peopleRepository.updateAll(List.of(savedPerson))).isZero();
+        } finally {
+            peopleRepository.setDirtyTrackingEnabled(false);
+        }
+    }
+
+    private static void setLastNameInDatabase(long id, String lastName) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement("UPDATE PEOPLE SET LAST_NAME = ? WHERE ID = ?")) {
+            preparedStatement.setString(1, lastName);
+            preparedStatement.setLong(2, id);
+            preparedStatement.executeUpdate();
+        }
+    }
+
+    @Test
+    public void canQueryRecordProjections() {
+        List<Person> savedPeople = createPeople(3).toList();
+        savedPeople.forEach(person -> person.setSalary(new BigDecimal("73000.28")));
+        peopleRepository.saveAll(savedPeople);
+        List<Long> ids = savedPeople.stream().map(Person::getId).toList();
+
+        List<PersonSalary> salaries = peopleRepository.query(
+                "SELECT ID, LAST_NAME, SALARY FROM PEOPLE WHERE ID >= ? ORDER BY ID", PersonSalary.class, ids.get(0));
+        List<String> firstNames = peopleRepository.query(
+                "SELECT FIRST_NAME FROM PEOPLE WHERE ID >= ? ORDER BY ID", resultSet -> resultSet.getString(1), ids.get(0));
+
+        assertThat(salaries).extracting(PersonSalary::id).containsExactlyElementsOf(ids);
+        assertThat(salaries).extracting(PersonSalary::lastName).containsOnly("Smith");
+        assertThat(salaries).extracting(PersonSalary::salary).containsOnly(new BigDecimal("73000.28"));
+        assertThat(firstNames).containsExactly("John0", "John1", "John2");
+        try (Stream<PersonSalary> allSalaries = peopleRepository.streamAll(PersonSalary.class)) {
+            assertThat(allSalaries.filter(salary -> ids.contains(salary.id()))).hasSize(3);
+        }
+    }
+
+    @Test
+    public void aggregatesSalariesInDatabase() {
+        List<Person> people = IntStream.rangeClosed(1, 4)
+                .mapToObj(i -> new Person("John" + i, "Smith", ZonedDateTime.of(
+                        1901, 6, 1, 12, 0, 0, 0, ZoneId.of("+0"))))
+                .toList();
+        for (int i = 0; i < people.size(); i++) {
+            people.get(i).setSalary(new BigDecimal((i + 1) * 10_000));
+        }
+        peopleRepository.saveAll(people);
+
+        SalaryStats stats = peopleRepository.getSalaryStats(SalaryGrouping.DOB_YEAR).get(1901);
+
+        assertThat(stats).isEqualTo(new SalaryStats(4, 100_000, 25_000, 10_000, 40_000, 25_000, 37_000));
+        assertThat(peopleRepository.getSalaryStats().headcount()).isEqualTo(peopleRepository.count());
+    }
+
+    @Test
+    public void findsPeopleByCriteria() {
+        List<Person> people = IntStream.rangeClosed(1, 5)
+                .mapToObj(i -> new Person("John" + i, "Criteria", ZonedDateTime.of(
+                        1902, i, 1, 12, 0, 0, 0, ZoneId.of("+0"))))
+                .toList();
+        for (int i = 0; i < people.size(); i++) {
+            people.get(i).setSalary(new BigDecimal((i + 1) * 10_000));
+        }
+        peopleRepository.saveAll(people);
+        ZonedDateTime from = ZonedDateTime.of(1902, 2, 1, 0, 0, 0, 0, ZoneId.of("+0"));
+        ZonedDateTime to = ZonedDateTime.of(1902, 4, 30, 0, 0, 0, 0, ZoneId.of("+0"));
+
+        PersonCriteria criteria = PersonCriteria.where(PersonField.LAST_NAME.eq("Criteria"))
+                .and(PersonField.DOB.between(from, to))
+                .and(PersonField.SALARY.ge(new BigDecimal("30000")))
+                .orderByDescending(PersonField.SALARY);
+        List<Person> found = peopleRepository.find(criteria);
+        long missCount = peopleRepository.getStatementCacheMissCount();
+        List<Person> reordered = peopleRepository.find(PersonCriteria.where(PersonField.SALARY.ge(new BigDecimal("40000")))
+                .and(PersonField.DOB.between(from, to))
+                .and(PersonField.LAST_NAME.eq("Criteria"))
+                .orderByDescending(PersonField.SALARY));
+
+        assertThat(found).extracting(Person::getFirstName).containsExactly("John4", "John3");
+        assertThat(reordered).extracting(Person::getFirstName).containsExactly("John4");
+        assertThat(peopleRepository.getStatementCacheMissCount()).isEqualTo(missCount);
+        assertThat(peopleRepository.count(criteria)).isEqualTo(2);
+        assertThat(peopleRepository.find(PersonCriteria.where(PersonField.FIRST_NAME.in(List.of("John1", "John5", "Nobody")))
+                .and(PersonField.LAST_NAME.like("Crit%")).limit(1)))
+                .extracting(Person::getFirstName).containsExactly("John1");
+    }
+
+    @Test
+    public void reportsOperationsToMetrics() {
+        InMemoryRepositoryMetrics metrics = new InMemoryRepositoryMetrics(Duration.ZERO, 10);
+        peopleRepository.setRepositoryListener(metrics);
+        try {
+            List<Person> savedPeople = createPeople(5).toList();
+            peopleRepository.saveAll(savedPeople);
+            peopleRepository.findById(savedPeople.get(0).getId());
+            peopleRepository.deleteAllById(savedPeople.stream().map(Person::getId).toList());
+        } finally {
+            peopleRepository.setRepositoryListener(null);
+        }
+
+        OperationStats saveStats = metrics.getStats(PeopleRepository.class, CrudOperation.SAVE);
+        OperationStats deleteStats = metrics.getStats(PeopleRepository.class, CrudOperation.DELETE_BY_IDS);
+        assertThat(saveStats.callCount()).isEqualTo(1);
+        assertThat(saveStats.rowCount()).isEqualTo(5);
+        assertThat(saveStats.p99Nanos()).isPositive().isLessThanOrEqualTo(saveStats.maxNanos());
+        assertThat(metrics.getStats(PeopleRepository.class, CrudOperation.FIND_BY_ID).callCount()).isEqualTo(1);
+        assertThat(deleteStats.rowCount()).isEqualTo(5);
+        assertThat(deleteStats.errorCount()).isZero();
+        assertThat(metrics.getSlowQueries()).hasSize(3);
+        assertThat(metrics.getSlowQueries().get(0).bindCount()).isEqualTo(5 * 9);
+        // the 5 IDs are padded to an IN list of 8
+        assertThat(metrics.getSlowQueries().get(2).bindCount()).isEqualTo(8);
+    }
+
+    @Test
+    public void reportsQueriesThatActuallyRan() {
+        List<RepositoryEvent> events = new ArrayList<>();
+        Person savedPerson = peopleRepository.save(createPeople(1).findFirst().get());
+        peopleRepository.setRepositoryListener(events::add);
+        try {
+            peopleRepository.findById(savedPerson.getId(), FetchPlan.LAZY);
+            peopleRepository.findPage(PersonSortKey.LAST_NAME, null, 1);
+        } finally {
+            peopleRepository.setRepositoryListener(null);
+        }
+
+        assertThat(events).extracting(RepositoryEvent::operation).containsExactly(CrudOperation.FIND_BY_ID, CrudOperation.FIND_PAGE);
+        assertThat(events.get(0).sql()).contains("WHERE PARENT.ID IN").doesNotContain("JOIN");
+        assertThat(events.get(0).rowCount()).isEqualTo(1);
+        assertThat(events.get(1).sql()).contains("PARENT.LAST_NAME");
+    }
+
+    @Test
+    public void reportsLazyAssociationLoads() {
+        Person person = createPeople(1).findFirst().get();
+        person.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala",
+                "WA", "90210", "United States", "Fulton County", Region.WEST));
+        Person lazyPerson = peopleRepository.findById(peopleRepository.save(person).getId(), FetchPlan.LAZY).get();
+        List<RepositoryEvent> events = new ArrayList<>();
+        peopleRepository.setRepositoryListener(events::add);
+        try {
+            lazyPerson.getHomeAddress();
+            lazyPerson.getChildren();
+        } finally {
+            peopleRepository.setRepositoryListener(null);
+        }
+
+        assertThat(events).extracting(RepositoryEvent::operation).containsExactly(CrudOperation.FIND_BY_IDS, CrudOperation.QUERY);
+        assertThat(events).extracting(RepositoryEvent::rowCount).containsExactly(1L, 0L);
+        assertThat(events).extracting(RepositoryEvent::bindCount).containsExactly(1, 1);
+    }
+
+    private static Stream<Person> createPeople(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Person("John" + i, "Smith", ZonedDateTime.of(
+                        1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+    }
+
     @Test
     @Disabled
-    public void loadData() throws IOException, SQLException {
-        Files.lines(Path.of("C:\\Users\\josep\\IdeaProjects\\Udemy\\Files\\Hr5m.csv"))
-                .skip(1)
-                .map(lines -> lines.split(","))
-                .map(array -> {
-                    LocalDate dob = LocalDate.parse(array[10], DateTimeFormatter.ofPattern("M/d/yyyy"));
-                    LocalTime tob = LocalTime.parse(array[11], DateTimeFormatter.ofPattern("hh:mm:ss a", Locale.ENGLISH));
-                    LocalDateTime dtob = LocalDateTime.of(dob, tob);
-                    ZonedDateTime zdtob = ZonedDateTime.of(dtob, ZoneId.of("+0"));
-                    Person person = new Person(array[2], array[4], zdtob);
-                    person.setSalary(new BigDecimal(array[25]));
-                    person.setEmail(array[6]);
-                    return person;
-                })
-                .forEach(peopleRepository::save);
-
-        connection.commit();
+    public void loadData() {
+        new PeopleCsvImporter(peopleRepository)
+                .importFile(Path.of("C:\\Users\\josep\\IdeaProjects\\Udemy\\Files\\Hr5m.csv"));
     }
 }
@@ -0,0 +1,35 @@
+CREATE TABLE IF NOT EXISTS ADDRESSES
+(
+    ID             BIGINT AUTO_INCREMENT PRIMARY KEY,
+    STREET_ADDRESS VARCHAR(255),
+    ADDRESS2       VARCHAR(255),
+    CITY           VARCHAR(255),
+    STATE          VARCHAR(255),
+    POSTCODE       VARCHAR(255),
+    COUNTY         VARCHAR(255),
+    REGION         VARCHAR(255),
+    COUNTRY        VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS PEOPLE
+(
+    ID               BIGINT AUTO_INCREMENT PRIMARY KEY,
+    FIRST_NAME       VARCHAR(255),
+    LAST_NAME        VARCHAR(255),
+    DOB              TIMESTAMP,
+    SALARY           DECIMAL(15, 2),
+    EMAIL            VARCHAR(255),
+    HOME_ADDRESS     BIGINT,
+    BUSINESS_ADDRESS BIGINT,
+    SPOUSE           BIGINT,
+    PARENT_ID        BIGINT
+);
+
+-- people are upserted by email, see PeopleRepository.UPSERT_PERSON_SQL
+CREATE UNIQUE INDEX IF NOT EXISTS UK_PEOPLE_EMAIL ON PEOPLE (EMAIL);
+
+-- keyset pages sorted by a column seek on its index, see PeopleRepository.findPage(PersonSortKey, ...)
+CREATE INDEX IF NOT EXISTS IX_PEOPLE_FIRST_NAME_ID ON PEOPLE (FIRST_NAME, ID);
+CREATE INDEX IF NOT EXISTS IX_PEOPLE_LAST_NAME_ID ON PEOPLE (LAST_NAME, ID);
+CREATE INDEX IF NOT EXISTS IX_PEOPLE_DOB_ID ON PEOPLE (DOB, ID);
+CREATE INDEX IF NOT EXISTS IX_PEOPLE_SALARY_ID ON PEOPLE (SALARY, ID);